@@ -0,0 +1,44 @@
+package com.saharw.pooledobject.jvm;
+
+import com.saharw.pooledobject.PoolFuture;
+import com.saharw.pooledobject.PooledObject;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link CompletableFuture} flavour of {@link PooledObject#checkOutAsync()}.
+ */
+public final class AsyncPools {
+
+    private AsyncPools() {
+    }
+
+    /**
+     * Borrows from {@code pool} without blocking the caller. The future completes immediately on
+     * a hit, otherwise from the pool's creator executor or from the checkIn that serves it.
+     * Cancelling the returned future gives up the pool request; an object that still arrives
+     * goes back to the pool.
+     */
+    public static <T> CompletableFuture<T> checkOutAsync(PooledObject<T> pool) {
+        final PoolFuture<T> pending = pool.checkOutAsync();
+        final CompletableFuture<T> future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                pending.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        pending.addListener(new PoolFuture.Listener<T>() {
+            @Override
+            public void onComplete(T value, Throwable failure) {
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else if (!future.complete(value)) {
+                    // cancelled in between
+                    pool.checkIn(value);
+                }
+            }
+        });
+        return future;
+    }
+}
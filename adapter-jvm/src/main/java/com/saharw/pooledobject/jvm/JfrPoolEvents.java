@@ -0,0 +1,214 @@
+package com.saharw.pooledobject.jvm;
+
+import com.saharw.pooledobject.PoolListener;
+import com.saharw.pooledobject.PooledObject;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits Java Flight Recorder events for the checkOuts, checkIns, creations and expiries of a
+ * pool, under the "PooledObject" category. The events are disabled unless a recording enables
+ * them, through a settings file ({@code <event name="com.saharw.pooledobject.CheckOut">} with
+ * {@code <setting name="enabled">true</setting>}), {@code jdk.jfr.Recording#enable} or JDK
+ * Mission Control.
+ * <p>
+ * Pools emit nothing until {@link #install(String, PooledObject)}ed. Once installed, a pool
+ * whose events are all disabled pays two {@link System#nanoTime()} calls per checkOut and
+ * creation plus one enabled check per event. The hold time of a checkIn needs the checkOut
+ * time of the object, tracked by weak identity while the check-in event is enabled (for up to
+ * {@value #MAX_TRACKED} objects checked out at once), so leaked objects can still be collected.
+ */
+public final class JfrPoolEvents {
+
+    static final int MAX_TRACKED = 65536;
+
+    private JfrPoolEvents() {
+    }
+
+    /**
+     * Makes {@code pool} emit events labelled {@code name}, replacing any listener it has.
+     */
+    public static <T> void install(String name, PooledObject<T> pool) {
+        pool.setListener(new Listener<T>(name));
+    }
+
+    /**
+     * Stops the events of a pool set up with {@link #install(String, PooledObject)}.
+     */
+    public static void uninstall(PooledObject<?> pool) {
+        if (pool.getListener() instanceof Listener) {
+            pool.setListener(null);
+        }
+    }
+
+    @Name("com.saharw.pooledobject.CheckOut")
+    @Label("Pool Check Out")
+    @Category("PooledObject")
+    @Enabled(false)
+    @Description("A checkOut of a pooled object: blocking, batch or asynchronous")
+    static final class CheckOutEvent extends Event {
+        @Label("Pool")
+        String pool;
+
+        @Label("Wait Duration")
+        @Timespan
+        long waitDuration;
+
+        @Label("Hit")
+        @Description("An idle object was available, nothing was created or waited for")
+        boolean hit;
+    }
+
+    @Name("com.saharw.pooledobject.CheckIn")
+    @Label("Pool Check In")
+    @Category("PooledObject")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class CheckInEvent extends Event {
+        @Label("Pool")
+        String pool;
+
+        @Label("Hold Duration")
+        @Description("Time since the checkOut, 0 if it happened before the event was enabled")
+        @Timespan
+        long holdDuration;
+    }
+
+    @Name("com.saharw.pooledobject.Create")
+    @Label("Pool Create")
+    @Category("PooledObject")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class CreateEvent extends Event {
+        @Label("Pool")
+        String pool;
+
+        @Label("Create Duration")
+        @Timespan
+        long createDuration;
+    }
+
+    @Name("com.saharw.pooledobject.Expire")
+    @Label("Pool Expire")
+    @Category("PooledObject")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ExpireEvent extends Event {
+        @Label("Pool")
+        String pool;
+    }
+
+    private static final EventType CHECK_OUT = EventType.getEventType(CheckOutEvent.class);
+    private static final EventType CHECK_IN = EventType.getEventType(CheckInEvent.class);
+    private static final EventType CREATE = EventType.getEventType(CreateEvent.class);
+    private static final EventType EXPIRE = EventType.getEventType(ExpireEvent.class);
+
+    // weak identity of a checked out object: the pooled type's equals() does not matter, and an
+    // object that is never checked in (a leak) is not kept reachable by the events
+    private static final class Identity extends WeakReference<Object> {
+        private final int hash;
+
+        Identity(Object o) {
+            super(o);
+            this.hash = System.identityHashCode(o);
+        }
+
+        Identity(Object o, ReferenceQueue<Object> queue) {
+            super(o, queue);
+            this.hash = System.identityHashCode(o);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            Object o = get();
+            return o != null && other instanceof Identity && ((Identity) other).get() == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Listener<T> implements PoolListener<T> {
+        private final String name;
+        private final ConcurrentMap<Identity, Long> checkedOut = new ConcurrentHashMap<>();
+        private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+        Listener(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onCheckOut(T o, long waitNanos, boolean hit) {
+            if (CHECK_IN.isEnabled()) {
+                // entries of objects collected while checked out
+                Reference<?> ref;
+                while ((ref = collected.poll()) != null) {
+                    checkedOut.remove(ref);
+                }
+                if (checkedOut.size() < MAX_TRACKED) {
+                    checkedOut.put(new Identity(o, collected), System.nanoTime());
+                }
+            }
+            if (CHECK_OUT.isEnabled()) {
+                CheckOutEvent event = new CheckOutEvent();
+                event.pool = name;
+                event.waitDuration = waitNanos;
+                event.hit = hit;
+                event.commit();
+            }
+        }
+
+        @Override
+        public void onCheckIn(T o) {
+            // entries left from before the event was disabled are dropped too
+            Long since = checkedOut.isEmpty() ? null : checkedOut.remove(new Identity(o));
+            if (CHECK_IN.isEnabled()) {
+                CheckInEvent event = new CheckInEvent();
+                event.pool = name;
+                event.holdDuration = since != null ? System.nanoTime() - since : 0L;
+                event.commit();
+            }
+        }
+
+        @Override
+        public void onCreate(T o, long createNanos) {
+            if (CREATE.isEnabled()) {
+                CreateEvent event = new CreateEvent();
+                event.pool = name;
+                event.createDuration = createNanos;
+                event.commit();
+            }
+        }
+
+        @Override
+        public void onExpire(T o) {
+            // an expired object will never be checked in
+            if (!checkedOut.isEmpty()) {
+                checkedOut.remove(new Identity(o));
+            }
+            if (EXPIRE.isEnabled()) {
+                ExpireEvent event = new ExpireEvent();
+                event.pool = name;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.saharw.pooledobject.jvm;
+
+import com.saharw.pooledobject.PoolFuture;
+import com.saharw.pooledobject.PooledObject;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Flow.Publisher} of objects borrowed from a {@link PooledObject}: each unit a subscriber
+ * requests becomes one {@link PooledObject#checkOutAsync()}, delivered as soon as an object is
+ * idle, created, or checked in by someone else. A bounded pool therefore backpressures the
+ * subscriber, and nothing hops to a scheduler: {@code onNext} runs on the thread that requested
+ * (hit), a creator thread (miss) or the thread whose checkIn served the request.
+ * <p>
+ * The subscriber owns every object it receives and must {@link PooledObject#checkIn(Object)
+ * check it in}. The stream never completes on its own; it ends with cancel, or with onError if
+ * creating an object fails. Objects still in flight when the subscription ends go back to the pool.
+ */
+public final class LeasePublisher<T> implements Flow.Publisher<T> {
+
+    private static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private final PooledObject<T> pool;
+    private final int maxInFlight;
+
+    /**
+     * Publisher with at most {@code min(maxSize, 256)} pool requests pending per subscriber.
+     */
+    public LeasePublisher(PooledObject<T> pool) {
+        this(pool, Math.min(pool.getMaxSize(), DEFAULT_MAX_IN_FLIGHT));
+    }
+
+    /**
+     * @param maxInFlight bound on the pool requests pending at once per subscriber, however much
+     *                    it requested (unbounded demand included)
+     */
+    public LeasePublisher(PooledObject<T> pool, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("max in flight must be >= 1, was " + maxInFlight);
+        }
+        this.pool = Objects.requireNonNull(pool);
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        subscriber.onSubscribe(new LeaseSubscription<T>(pool, subscriber, maxInFlight));
+    }
+
+    private static final class LeaseSubscription<T> implements Flow.Subscription {
+        private final PooledObject<T> pool;
+        private final Flow.Subscriber<? super T> subscriber;
+        private final int maxInFlight;
+
+        // demand not turned into pool requests yet, Long.MAX_VALUE meaning unbounded
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Set<PoolFuture<T>> pending = ConcurrentHashMap.newKeySet();
+        // borrowed objects waiting for the emitting thread
+        private final Queue<T> ready = new ConcurrentLinkedQueue<>();
+        // work-in-progress counter, only the thread that raises it from 0 signals the subscriber
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        // guarded by wip
+        private boolean terminated;
+
+        LeaseSubscription(PooledObject<T> pool, Flow.Subscriber<? super T> subscriber, int maxInFlight) {
+            this.pool = pool;
+            this.subscriber = subscriber;
+            this.maxInFlight = maxInFlight;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                for (;;) {
+                    long r = requested.get();
+                    long u = r + n < 0 ? Long.MAX_VALUE : r + n;
+                    if (r == Long.MAX_VALUE || requested.compareAndSet(r, u)) {
+                        break;
+                    }
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            for (PoolFuture<T> f : pending) {
+                f.cancel(false);
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                if (cancelled || terminated) {
+                    T o;
+                    while ((o = ready.poll()) != null) {
+                        pool.checkIn(o);
+                    }
+                } else {
+                    // demand was taken when the request was issued, so everything ready can go
+                    T o;
+                    while (!cancelled && (o = ready.poll()) != null) {
+                        subscriber.onNext(o);
+                    }
+                    Throwable e = error;
+                    if (e != null && !cancelled) {
+                        terminated = true;
+                        cancel();
+                        subscriber.onError(e);
+                    } else if (!cancelled) {
+                        issue();
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // turns demand into pool requests, up to maxInFlight of them; hits complete (and raise
+        // wip) synchronously, so drain() loops again to emit them
+        private void issue() {
+            while (inFlight.get() < maxInFlight && takeDemand()) {
+                inFlight.incrementAndGet();
+                final PoolFuture<T> f = pool.checkOutAsync();
+                pending.add(f);
+                f.addListener(new PoolFuture.Listener<T>() {
+                    @Override
+                    public void onComplete(T value, Throwable failure) {
+                        pending.remove(f);
+                        inFlight.decrementAndGet();
+                        if (failure == null) {
+                            ready.offer(value);
+                        } else if (!(failure instanceof CancellationException)) {
+                            error = failure;
+                        }
+                        drain();
+                    }
+                });
+            }
+        }
+
+        private boolean takeDemand() {
+            for (;;) {
+                long r = requested.get();
+                if (r == 0) {
+                    return false;
+                }
+                if (r == Long.MAX_VALUE || requested.compareAndSet(r, r - 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
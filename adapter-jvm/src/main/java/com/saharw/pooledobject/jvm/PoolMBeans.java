@@ -0,0 +1,214 @@
+package com.saharw.pooledobject.jvm;
+
+import com.saharw.pooledobject.LatencyHistogram;
+import com.saharw.pooledobject.PoolMetrics;
+import com.saharw.pooledobject.PooledObject;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers pools with the platform MBean server, one {@link PooledObjectMXBean} per pool under
+ * {@code com.saharw.pooledobject:type=PooledObject,name=<name>}.
+ */
+public final class PoolMBeans {
+
+    public static final String DOMAIN = "com.saharw.pooledobject";
+
+    private PoolMBeans() {
+    }
+
+    /**
+     * Enables the metrics of {@code pool} if needed and registers it under {@code name}.
+     *
+     * @return the name it was registered under, for {@link #unregister(ObjectName)}
+     * @throws IllegalStateException if a pool is already registered under {@code name}
+     */
+    public static ObjectName register(String name, PooledObject<?> pool) {
+        if (pool.getMetrics() == null) {
+            pool.setMetricsEnabled(true);
+        }
+        ObjectName objectName = objectName(name);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(name, pool), objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register pool " + objectName, e);
+        }
+        return objectName;
+    }
+
+    /**
+     * Removes a pool registered by {@link #register(String, PooledObject)}; its metrics stay on.
+     */
+    public static void unregister(ObjectName objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot unregister pool " + objectName, e);
+        }
+    }
+
+    public static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(DOMAIN + ":type=PooledObject,name=" + ObjectName.quote(name));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("invalid pool name " + name, e);
+        }
+    }
+
+    private static final class Bean implements PooledObjectMXBean {
+        private final String name;
+        private final PooledObject<?> pool;
+
+        Bean(String name, PooledObject<?> pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+
+        // read on every call, metrics can be disabled or restarted after registration
+        private PoolMetrics metrics() {
+            return pool.getMetrics();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getSize() {
+            return pool.getSize();
+        }
+
+        @Override
+        public int getMaxSize() {
+            return pool.getMaxSize();
+        }
+
+        @Override
+        public int getIdleCount() {
+            return pool.getIdleCount();
+        }
+
+        @Override
+        public int getActiveCount() {
+            return Math.max(0, pool.getSize() - pool.getIdleCount());
+        }
+
+        @Override
+        public long getBorrows() {
+            PoolMetrics m = metrics();
+            return m != null ? m.getBorrows() : 0L;
+        }
+
+        @Override
+        public long getHits() {
+            PoolMetrics m = metrics();
+            return m != null ? m.getHits() : 0L;
+        }
+
+        @Override
+        public long getMisses() {
+            PoolMetrics m = metrics();
+            return m != null ? m.getMisses() : 0L;
+        }
+
+        @Override
+        public double getHitRatio() {
+            PoolMetrics m = metrics();
+            long borrows = m != null ? m.getBorrows() : 0L;
+            return borrows == 0L ? 0.0 : (double) m.getHits() / borrows;
+        }
+
+        @Override
+        public long getCreates() {
+            PoolMetrics m = metrics();
+            return m != null ? m.getCreates() : 0L;
+        }
+
+        @Override
+        public long getValidationFailures() {
+            PoolMetrics m = metrics();
+            return m != null ? m.getValidationFailures() : 0L;
+        }
+
+        @Override
+        public long getExpirations() {
+            PoolMetrics m = metrics();
+            return m != null ? m.getExpirations() : 0L;
+        }
+
+        @Override
+        public double getCheckOutWaitMeanMicros() {
+            LatencyHistogram h = checkOutWait();
+            return h != null ? h.getMean() / 1e3 : 0.0;
+        }
+
+        @Override
+        public double getCheckOutWaitP50Micros() {
+            return percentile(checkOutWait(), 50.0);
+        }
+
+        @Override
+        public double getCheckOutWaitP99Micros() {
+            return percentile(checkOutWait(), 99.0);
+        }
+
+        @Override
+        public double getCheckOutWaitP999Micros() {
+            return percentile(checkOutWait(), 99.9);
+        }
+
+        @Override
+        public double getCheckOutWaitMaxMicros() {
+            LatencyHistogram h = checkOutWait();
+            return h != null ? h.getMax() / 1e3 : 0.0;
+        }
+
+        @Override
+        public double getCreateTimeMeanMicros() {
+            LatencyHistogram h = createTime();
+            return h != null ? h.getMean() / 1e3 : 0.0;
+        }
+
+        @Override
+        public double getCreateTimeP50Micros() {
+            return percentile(createTime(), 50.0);
+        }
+
+        @Override
+        public double getCreateTimeP99Micros() {
+            return percentile(createTime(), 99.0);
+        }
+
+        @Override
+        public double getCreateTimeMaxMicros() {
+            LatencyHistogram h = createTime();
+            return h != null ? h.getMax() / 1e3 : 0.0;
+        }
+
+        @Override
+        public void resetMetrics() {
+            pool.setMetricsEnabled(true);
+        }
+
+        private LatencyHistogram checkOutWait() {
+            PoolMetrics m = metrics();
+            return m != null ? m.getCheckOutWaitTime() : null;
+        }
+
+        private LatencyHistogram createTime() {
+            PoolMetrics m = metrics();
+            return m != null ? m.getCreateTime() : null;
+        }
+
+        private static double percentile(LatencyHistogram h, double percentile) {
+            return h != null ? h.getPercentile(percentile) / 1e3 : 0.0;
+        }
+    }
+}
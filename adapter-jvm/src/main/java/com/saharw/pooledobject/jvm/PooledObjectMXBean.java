@@ -0,0 +1,59 @@
+package com.saharw.pooledobject.jvm;
+
+/**
+ * JMX view of a {@link com.saharw.pooledobject.PooledObject} and its
+ * {@link com.saharw.pooledobject.PoolMetrics}, registered with {@link PoolMBeans}.
+ * Durations are in microseconds.
+ */
+public interface PooledObjectMXBean {
+
+    String getName();
+
+    int getSize();
+
+    int getMaxSize();
+
+    int getIdleCount();
+
+    int getActiveCount();
+
+    long getBorrows();
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return hits over borrows, 0 before the first borrow
+     */
+    double getHitRatio();
+
+    long getCreates();
+
+    long getValidationFailures();
+
+    long getExpirations();
+
+    double getCheckOutWaitMeanMicros();
+
+    double getCheckOutWaitP50Micros();
+
+    double getCheckOutWaitP99Micros();
+
+    double getCheckOutWaitP999Micros();
+
+    double getCheckOutWaitMaxMicros();
+
+    double getCreateTimeMeanMicros();
+
+    double getCreateTimeP50Micros();
+
+    double getCreateTimeP99Micros();
+
+    double getCreateTimeMaxMicros();
+
+    /**
+     * Restarts all counters and histograms from zero.
+     */
+    void resetMetrics();
+}
@@ -0,0 +1,184 @@
+package com.saharw.pooledobject.jvm;
+
+import com.saharw.pooledobject.IdleStore;
+import com.saharw.pooledobject.IdleStores;
+import com.saharw.pooledobject.Lease;
+import com.saharw.pooledobject.PooledObject;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails the build when a checkOut/checkIn pair allocates more than its budget, measured with
+ * the per-thread allocation counter of {@link com.sun.management.ThreadMXBean} once the JIT
+ * has compiled the path. The figure reported is the lowest of a few rounds, so a compilation
+ * or a stray allocation during one round does not fail the gate.
+ */
+public class AllocationGateTest {
+
+    private static final int WARMUP_OPS = 200000;
+    private static final int MEASURED_OPS = 1000000;
+    private static final int ROUNDS = 5;
+    // amortized cost of reading the counter, well below one object per thousand pairs
+    private static final double TOLERANCE = 0.01;
+
+    private static final int MEASURED_NODES = 100000;
+
+    private static com.sun.management.ThreadMXBean threads;
+    // one LockFreeIdleStore node, measured on this JVM rather than assumed: 32 bytes with the
+    // default compressed references, more without, and a fixed figure for both lets a regression
+    // of the difference through
+    private static double nodeBytes;
+
+    static final class Thing {
+        long value;
+    }
+
+    @BeforeClass
+    public static void enableAllocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        nodeBytes = nodeBytes();
+    }
+
+    @Test
+    public void threadCacheAllocatesNothing() {
+        PooledObject<Thing> pool = pool();
+        pool.setThreadCacheSize(16);
+        assertWithinBudget("thread cache", 0, checkOutCheckIn(pool));
+    }
+
+    @Test
+    public void slotStoreAllocatesNothing() {
+        PooledObject<Thing> pool = pool();
+        pool.setIdleStore(IdleStores.<Thing>slots(64));
+        assertWithinBudget("slot store", 0, checkOutCheckIn(pool));
+    }
+
+    @Test
+    public void metricsAllocateNothing() {
+        PooledObject<Thing> pool = pool();
+        pool.setThreadCacheSize(16);
+        pool.setMetricsEnabled(true);
+        assertWithinBudget("thread cache with metrics", 0, checkOutCheckIn(pool));
+    }
+
+    @Test
+    public void leaseAllocatesNothing() {
+        final PooledObject<Thing> pool = pool();
+        pool.setThreadCacheSize(16);
+        assertWithinBudget("lease", 0, new Runnable() {
+            @Override
+            public void run() {
+                Lease<Thing> lease = pool.lease();
+                lease.get().value++;
+                lease.close();
+            }
+        });
+    }
+
+    @Test
+    public void lockFreeStoreAllocatesOneNode() {
+        assertWithinBudget("default store", nodeBytes, checkOutCheckIn(pool()));
+    }
+
+    @Test
+    public void evictAllocatesNothing() {
+        final IdleStore<Thing> store = IdleStores.lifo();
+        for (int i = 0; i < 100; i++) {
+            store.offer(new Thing(), i);
+        }
+        final IdleStore.Filter<Thing> keep = new IdleStore.Filter<Thing>() {
+            @Override
+            public boolean accept(Thing o, long idleSince) {
+                return true;
+            }
+        };
+        assertWithinBudget("evict of a batch", 0, new Runnable() {
+            @Override
+            public void run() {
+                store.evict(keep, 8);
+            }
+        });
+    }
+
+    private static PooledObject<Thing> pool() {
+        PooledObject<Thing> pool = new PooledObject<Thing>() {
+            @Override
+            public Thing create(Thing o) {
+                return new Thing();
+            }
+
+            @Override
+            public boolean validate(Thing o) {
+                return true;
+            }
+
+            @Override
+            public void expire(Thing o) {
+            }
+        };
+        // long enough that nothing expires during a run
+        pool.setExpirationTime(Long.MAX_VALUE / 2);
+        return pool;
+    }
+
+    private static Runnable checkOutCheckIn(final PooledObject<Thing> pool) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                Thing t = pool.checkOut();
+                t.value++;
+                pool.checkIn(t);
+            }
+        };
+    }
+
+    private static void assertWithinBudget(String path, double budget, Runnable op) {
+        double bytesPerOp = bytesPerOp(op);
+        assertTrue(String.format("%s allocates %.2f bytes per checkOut/checkIn, budget %.0f", path, bytesPerOp,
+                budget), bytesPerOp <= budget + TOLERANCE);
+    }
+
+    // what offering to a store allocates, nothing but a node as long as nothing is polled
+    private static double nodeBytes() {
+        long thread = Thread.currentThread().getId();
+        Thing thing = new Thing();
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            IdleStore<Thing> store = IdleStores.lifo();
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < MEASURED_NODES; i++) {
+                store.offer(thing, 0L);
+            }
+            long after = threads.getThreadAllocatedBytes(thread);
+            best = Math.min(best, (double) (after - before) / MEASURED_NODES);
+        }
+        return Math.floor(best);
+    }
+
+    private static double bytesPerOp(Runnable op) {
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_OPS; i++) {
+            op.run();
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < MEASURED_OPS; i++) {
+                op.run();
+            }
+            long after = threads.getThreadAllocatedBytes(thread);
+            best = Math.min(best, (double) (after - before) / MEASURED_OPS);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,120 @@
+package com.saharw.pooledobject.jvm;
+
+import com.saharw.pooledobject.PooledObject;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JfrPoolEventsTest {
+
+    private static final String CHECK_OUT = "com.saharw.pooledobject.CheckOut";
+    private static final String CHECK_IN = "com.saharw.pooledobject.CheckIn";
+
+    static final class Thing {
+    }
+
+    private PooledObject<Thing> pool;
+    private Recording recording;
+
+    @Before
+    public void setUp() {
+        pool = new PooledObject<Thing>() {
+            @Override
+            public Thing create(Thing o) {
+                return new Thing();
+            }
+
+            @Override
+            public boolean validate(Thing o) {
+                return true;
+            }
+
+            @Override
+            public void expire(Thing o) {
+            }
+        };
+        pool.setCreatorExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        JfrPoolEvents.install("things", pool);
+        recording = new Recording();
+        recording.enable(CHECK_OUT);
+        recording.enable(CHECK_IN);
+        recording.start();
+    }
+
+    @After
+    public void tearDown() {
+        recording.close();
+    }
+
+    @Test
+    public void everyCheckOutFlavourEmitsAnEvent() throws Exception {
+        Thing blocking = pool.checkOut();
+        Thing timed = pool.checkOut(1, TimeUnit.SECONDS);
+        List<Thing> batch = new ArrayList<>();
+        pool.checkOut(3, batch);
+        Thing async = pool.checkOutAsync().get();
+        pool.checkIn(blocking);
+        pool.checkIn(timed);
+        pool.checkIn(batch);
+        pool.checkIn(async);
+
+        List<RecordedEvent> events = events();
+        assertEquals(6, count(events, CHECK_OUT));
+        assertEquals(6, count(events, CHECK_IN));
+        for (RecordedEvent event : events) {
+            assertEquals("things", event.getString("pool"));
+        }
+    }
+
+    @Test
+    public void leakedObjectIsNotKeptByTheEvents() throws Exception {
+        WeakReference<Thing> leaked = new WeakReference<>(pool.checkOut());
+        for (int i = 0; i < 50 && leaked.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(leaked.get());
+    }
+
+    private List<RecordedEvent> events() throws IOException {
+        recording.stop();
+        Path file = Files.createTempFile("pool", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static int count(List<RecordedEvent> events, String name) {
+        int n = 0;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
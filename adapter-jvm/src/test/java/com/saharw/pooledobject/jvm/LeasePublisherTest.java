@@ -0,0 +1,144 @@
+package com.saharw.pooledobject.jvm;
+
+import com.saharw.pooledobject.PooledObject;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LeasePublisher} hands out no more than the subscriber requested and the pool allows,
+ * and gives back what it holds when the subscription ends.
+ */
+public class LeasePublisherTest {
+
+    static final class Thing {
+    }
+
+    static class ThingPool extends PooledObject<Thing> {
+        ThingPool() {
+            // creations run on the requesting thread, so the test sees them done
+            setCreatorExecutor(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+        }
+
+        @Override
+        public Thing create(Thing o) {
+            return new Thing();
+        }
+
+        @Override
+        public boolean validate(Thing o) {
+            return true;
+        }
+
+        @Override
+        public void expire(Thing o) {
+        }
+    }
+
+    static final class Recorder implements Flow.Subscriber<Thing> {
+        final List<Thing> received = new CopyOnWriteArrayList<>();
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Thing item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            throw new AssertionError("a lease stream never completes");
+        }
+    }
+
+    @Test
+    public void onlyRequestedObjectsAreBorrowed() {
+        ThingPool pool = new ThingPool();
+        Recorder recorder = subscribe(pool);
+
+        recorder.subscription.request(2);
+        assertEquals(2, recorder.received.size());
+        assertEquals(2, pool.getSize());
+        recorder.subscription.request(1);
+        assertEquals(3, recorder.received.size());
+        assertNull(recorder.error);
+    }
+
+    @Test
+    public void fullPoolHoldsBackDemandUntilACheckIn() {
+        ThingPool pool = new ThingPool();
+        pool.setMaxSize(2);
+        Recorder recorder = subscribe(pool);
+
+        recorder.subscription.request(3);
+        assertEquals(2, recorder.received.size());
+        pool.checkIn(recorder.received.get(0));
+        assertEquals(3, recorder.received.size());
+        assertEquals(2, pool.getSize());
+    }
+
+    @Test
+    public void cancelGivesPendingRequestsBackToThePool() {
+        ThingPool pool = new ThingPool();
+        pool.setMaxSize(1);
+        Recorder recorder = subscribe(pool);
+
+        recorder.subscription.request(2);
+        assertEquals(1, recorder.received.size());
+        recorder.subscription.cancel();
+        pool.checkIn(recorder.received.get(0));
+
+        assertEquals(1, recorder.received.size());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void nonPositiveRequestSignalsAnError() {
+        Recorder recorder = subscribe(new ThingPool());
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void failedCreateSignalsAnError() {
+        ThingPool pool = new ThingPool() {
+            @Override
+            public Thing create(Thing o) {
+                throw new IllegalStateException("no connection");
+            }
+        };
+        Recorder recorder = subscribe(pool);
+        recorder.subscription.request(1);
+        assertTrue(String.valueOf(recorder.error), recorder.error instanceof IllegalStateException);
+        assertEquals(0, recorder.received.size());
+    }
+
+    private static Recorder subscribe(PooledObject<Thing> pool) {
+        Recorder recorder = new Recorder();
+        new LeasePublisher<>(pool).subscribe(recorder);
+        return recorder;
+    }
+}
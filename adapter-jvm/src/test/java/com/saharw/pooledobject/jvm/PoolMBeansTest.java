@@ -0,0 +1,62 @@
+package com.saharw.pooledobject.jvm;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * A pool registered by {@link PoolMBeans} shows its metrics as attributes of the platform MBean
+ * server until it is unregistered.
+ */
+public class PoolMBeansTest {
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final LeasePublisherTest.ThingPool pool = new LeasePublisherTest.ThingPool();
+    private final ObjectName name = PoolMBeans.register("things, \"quoted\"", pool);
+
+    @After
+    public void tearDown() {
+        PoolMBeans.unregister(name);
+    }
+
+    @Test
+    public void attributesFollowThePool() throws Exception {
+        assertNotNull("metrics enabled by register", pool.getMetrics());
+        pool.checkIn(pool.checkOut());
+        pool.checkIn(pool.checkOut());
+
+        assertEquals("things, \"quoted\"", server.getAttribute(name, "Name"));
+        assertEquals(2L, server.getAttribute(name, "Borrows"));
+        assertEquals(1L, server.getAttribute(name, "Misses"));
+        assertEquals(1L, server.getAttribute(name, "Hits"));
+        assertEquals(0.5, (Double) server.getAttribute(name, "HitRatio"), 0.0);
+        assertEquals(1, server.getAttribute(name, "IdleCount"));
+    }
+
+    @Test
+    public void resetMetricsStartsFromZero() throws Exception {
+        pool.checkOut();
+        server.invoke(name, "resetMetrics", null, null);
+        assertEquals(0L, server.getAttribute(name, "Borrows"));
+        assertEquals(1, server.getAttribute(name, "ActiveCount"));
+    }
+
+    @Test
+    public void nameCanBeRegisteredOnce() {
+        try {
+            PoolMBeans.register("things, \"quoted\"", new LeasePublisherTest.ThingPool());
+            fail("registered twice");
+        } catch (IllegalStateException expected) {
+        }
+        PoolMBeans.unregister(name);
+        assertFalse(server.isRegistered(name));
+    }
+}
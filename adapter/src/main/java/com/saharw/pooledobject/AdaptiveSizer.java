@@ -0,0 +1,116 @@
+package com.saharw.pooledobject;
+
+/**
+ * Controller behind {@link PooledObject#setAdaptiveSizing}. Borrows, misses (nothing idle) and
+ * waits (pool at max size) are counted on striped counters; once per period the controller looks
+ * at what changed and moves the max size and max idle of the pool within its bounds:
+ * <ul>
+ * <li>borrows waiting for {@value #SUSTAIN} periods in a row grow the max size by a quarter,</li>
+ * <li>more than 5% misses grow the max idle by a quarter, so fewer objects are expired on checkIn
+ * only to be created again,</li>
+ * <li>under 1% misses, idle objects nobody borrowed for {@value #SUSTAIN} periods are expired
+ * right away and the max idle is lowered by as many (never below the min idle, nor below the
+ * live objects, which would make checkIns expire what borrows recreate),</li>
+ * <li>fewer objects checked out (a moving average) than half the max size for {@value #SUSTAIN}
+ * periods shrink the max size by a quarter, never below the live objects: trimming idle objects
+ * comes first, the max size follows.</li>
+ * </ul>
+ * Borrows are never timed: the number of objects checked out is the arrival rate times the hold
+ * time (Little's law), so it tracks both for the price of sampling two counts.
+ */
+final class AdaptiveSizer {
+
+    static final int SUSTAIN = 3;
+    // weight of the latest sample in the moving averages
+    private static final double ALPHA = 0.3;
+
+    private final PooledObject<?> pool;
+    private final int lowerSize;
+    private final int upperSize;
+    private final long periodMillis;
+
+    final StripedCounter borrows = new StripedCounter();
+    final StripedCounter misses = new StripedCounter();
+    final StripedCounter waits = new StripedCounter();
+
+    // scheduler thread only
+    private long lastBorrows;
+    private long lastMisses;
+    private long lastWaits;
+    private int waitPeriods;
+    private int quietPeriods;
+    private double inUse;
+
+    final Runnable adjustTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                adjust();
+            } catch (RuntimeException e) {
+                // an expire() failure while trimming must not stop the controller
+            }
+        }
+    };
+
+    AdaptiveSizer(PooledObject<?> pool, int lowerSize, int upperSize, long periodMillis) {
+        this.pool = pool;
+        this.lowerSize = lowerSize;
+        this.upperSize = upperSize;
+        this.periodMillis = periodMillis;
+    }
+
+    private void adjust() {
+        long b = borrows.sum();
+        long m = misses.sum();
+        long w = waits.sum();
+        long borrowed = b - lastBorrows;
+        long missed = m - lastMisses;
+        long waited = w - lastWaits;
+        lastBorrows = b;
+        lastMisses = m;
+        lastWaits = w;
+
+        int size = pool.getSize();
+        int idle = pool.getIdleCount();
+        inUse += ALPHA * (Math.max(0, size - idle) - inUse);
+
+        int maxSize = pool.getMaxSize();
+        if (waited > 0) {
+            quietPeriods = 0;
+            if (++waitPeriods >= SUSTAIN && maxSize < upperSize) {
+                waitPeriods = 0;
+                maxSize = Math.min(upperSize, maxSize + Math.max(1, maxSize / 4));
+                pool.setMaxSize(maxSize);
+            }
+        } else {
+            waitPeriods = 0;
+            if (inUse >= maxSize / 2.0) {
+                quietPeriods = 0;
+            } else if (++quietPeriods >= SUSTAIN && maxSize > lowerSize) {
+                quietPeriods = 0;
+                maxSize = Math.max(lowerSize, Math.max(size, maxSize * 3 / 4));
+                pool.setMaxSize(maxSize);
+            }
+        }
+
+        int maxIdle = Math.min(pool.getMaxIdle(), maxSize);
+        int floor = Math.min(pool.getMinIdle(), maxSize);
+        int trimmed = 0;
+        if (missed * 20 > borrowed) {
+            maxIdle = Math.min(maxSize, maxIdle + Math.max(1, maxIdle / 4));
+        } else if (idle > floor && (borrowed == 0 || missed * 100 < borrowed)) {
+            // objects nobody borrowed for the whole window are surplus, whatever the hour
+            trimmed = pool.trimIdle(idle - floor, SUSTAIN * periodMillis);
+            maxIdle -= trimmed;
+        }
+        // every live object kept must fit back in, or checkIns expire what borrows then recreate
+        maxIdle = Math.max(floor, Math.max(maxIdle, Math.min(size - trimmed, maxSize)));
+        if (maxIdle != pool.getMaxIdle()) {
+            pool.setMaxIdle(maxIdle);
+        }
+        int excess = pool.getIdleCount() - maxIdle;
+        if (excess > 0) {
+            pool.trimIdle(excess, 0);
+        }
+    }
+}
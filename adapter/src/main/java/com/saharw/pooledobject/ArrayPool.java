@@ -0,0 +1,405 @@
+package com.saharw.pooledobject;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool of primitive arrays by power-of-two size class: {@link #borrow(int)} returns an array of
+ * at least the requested length, {@link #release(Object)} gives it back. Each class is a
+ * {@link PooledObject}, with its lock-free borrow path, per-thread cache, expiry and evictor.
+ * Instances come from {@link ArrayPools}.
+ * <p>
+ * Borrowed arrays are not cleared and hold whatever their previous user left in them. Lengths
+ * above the largest class are allocated on every borrow and dropped on release.
+ *
+ * @param <A> the array type, e.g. {@code byte[]}
+ */
+public abstract class ArrayPool<A> {
+
+    // classes whose arrays are larger are never cached per thread
+    private static final int THREAD_CACHE_MAX_BYTES = 64 * 1024;
+
+    private final int minShift;
+    private final int elementBytes;
+    private final SizeClass<A>[] classes;
+
+    ArrayPool(int minLength, int maxLength, int elementBytes) {
+        if (Integer.bitCount(minLength) != 1 || Integer.bitCount(maxLength) != 1 || minLength > maxLength) {
+            throw new IllegalArgumentException("invalid array pool: classes " + minLength + ".." + maxLength);
+        }
+        this.minShift = Integer.numberOfTrailingZeros(minLength);
+        this.elementBytes = elementBytes;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        SizeClass<A>[] classes = new SizeClass[Integer.numberOfTrailingZeros(maxLength) - minShift + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass<>(this, minLength << i);
+        }
+        this.classes = classes;
+    }
+
+    abstract A newArray(int length);
+
+    abstract int lengthOf(A array);
+
+    /**
+     * @return an array of at least {@code minLength} elements (the length of its class), to be
+     * given back with {@link #release(Object)}
+     */
+    public A borrow(int minLength) {
+        if (minLength < 0) {
+            throw new IllegalArgumentException("length must be >= 0, was " + minLength);
+        }
+        int index = indexFor(minLength);
+        if (index >= classes.length) {
+            // longer than any class, not pooled
+            return newArray(minLength);
+        }
+        SizeClass<A> sizeClass = classes[index];
+        sizeClass.borrows.increment();
+        return sizeClass.checkOut();
+    }
+
+    /**
+     * Gives back an array obtained from {@link #borrow(int)}; it must not be used afterwards.
+     * Arrays of a length no class holds were not pooled and are dropped.
+     *
+     * @throws IllegalArgumentException if the array has the length of a class but was not
+     *                                  borrowed from this pool
+     */
+    public void release(A array) {
+        SizeClass<A> sizeClass = classOf(lengthOf(array));
+        if (sizeClass == null) {
+            return;
+        }
+        if (!sizeClass.owned.contains(array)) {
+            throw new IllegalArgumentException("array not borrowed from this pool: " + array);
+        }
+        sizeClass.checkIn(array);
+    }
+
+    /**
+     * Caps the idle arrays kept by the class holding arrays of {@code length} elements;
+     * arrays released beyond the cap are dropped. See {@link PooledObject#setMaxIdle(int)}.
+     */
+    public void setMaxIdle(int length, int maxIdle) {
+        SizeClass<A> sizeClass = classOf(length);
+        if (sizeClass == null) {
+            throw new IllegalArgumentException("no size class of length " + length);
+        }
+        sizeClass.setMaxIdle(maxIdle);
+    }
+
+    /**
+     * Caps the idle arrays kept by every class.
+     */
+    public void setMaxIdle(int maxIdle) {
+        for (SizeClass<A> sizeClass : classes) {
+            sizeClass.setMaxIdle(maxIdle);
+        }
+    }
+
+    /**
+     * Per-thread cache of each class whose arrays are at most 64 KiB, off by default; larger
+     * classes are never cached per thread. Worth enabling for threads that live as long as the
+     * pool: arrays cached by a thread that dies are only taken back by the evictor or a trim.
+     */
+    public void setThreadCacheSize(int size) {
+        for (SizeClass<A> sizeClass : classes) {
+            sizeClass.setThreadCacheSize(sizeClass.bytes() <= THREAD_CACHE_MAX_BYTES ? size : 0);
+        }
+    }
+
+    /**
+     * Idle time after which an array is dropped, see {@link PooledObject#setExpirationTime(long)}.
+     */
+    public void setExpirationTime(long expirationTime) {
+        for (SizeClass<A> sizeClass : classes) {
+            sizeClass.setExpirationTime(expirationTime);
+        }
+    }
+
+    /**
+     * Background expiry of idle arrays, see {@link PooledObject#setEvictionPolicy(long, int)}.
+     */
+    public void setEvictionPolicy(long periodMillis, int batchSize) {
+        for (SizeClass<A> sizeClass : classes) {
+            sizeClass.setEvictionPolicy(periodMillis, batchSize);
+        }
+    }
+
+    /**
+     * @return a snapshot of the statistics of every class, smallest first
+     */
+    public List<Stats> getStats() {
+        List<Stats> stats = new ArrayList<>(classes.length);
+        for (SizeClass<A> sizeClass : classes) {
+            stats.add(new Stats(sizeClass.length, sizeClass.bytes(), sizeClass.borrows.sum(),
+                    sizeClass.misses.sum(), sizeClass.getIdleCount(), sizeClass.getSize()));
+        }
+        return Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * @return bytes of the arrays idle in the shared stores (thread caches not included)
+     */
+    public long getIdleBytes() {
+        long bytes = 0L;
+        for (SizeClass<A> sizeClass : classes) {
+            bytes += (long) sizeClass.getIdleCount() * sizeClass.bytes();
+        }
+        return bytes;
+    }
+
+    private int indexFor(int length) {
+        if (length <= 1 << minShift) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - minShift;
+    }
+
+    private SizeClass<A> classOf(int length) {
+        if (Integer.bitCount(length) != 1) {
+            return null;
+        }
+        int index = Integer.numberOfTrailingZeros(length) - minShift;
+        return index >= 0 && index < classes.length ? classes[index] : null;
+    }
+
+    /**
+     * Statistics of one size class, read without stopping borrowers, so the figures are only
+     * consistent with each other approximately.
+     */
+    public static final class Stats {
+        private final int length;
+        private final long arrayBytes;
+        private final long borrows;
+        private final long misses;
+        private final int idle;
+        private final int live;
+
+        Stats(int length, long arrayBytes, long borrows, long misses, int idle, int live) {
+            this.length = length;
+            this.arrayBytes = arrayBytes;
+            this.borrows = borrows;
+            this.misses = misses;
+            this.idle = idle;
+            this.live = live;
+        }
+
+        /**
+         * @return length of the arrays of this class
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return bytes of the elements of one array of this class
+         */
+        public long getArrayBytes() {
+            return arrayBytes;
+        }
+
+        public long getBorrows() {
+            return borrows;
+        }
+
+        /**
+         * @return borrows served by an idle array
+         */
+        public long getHits() {
+            return Math.max(0L, borrows - misses);
+        }
+
+        /**
+         * @return borrows that found no idle array, in the shared store or the thread cache
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return arrays idle in the shared store (thread caches not included)
+         */
+        public int getIdle() {
+            return idle;
+        }
+
+        /**
+         * @return arrays allocated and not yet dropped, idle or borrowed
+         */
+        public int getLive() {
+            return live;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{length=" + length + ", borrows=" + borrows + ", misses=" + misses
+                    + ", idle=" + idle + ", live=" + live + '}';
+        }
+    }
+
+    private static final class SizeClass<A> extends PooledObject<A> {
+        final ArrayPool<A> owner;
+        final int length;
+        final StripedCounter borrows = new StripedCounter();
+        final StripedCounter misses = new StripedCounter();
+        final OwnedArrays owned = new OwnedArrays();
+
+        SizeClass(ArrayPool<A> owner, int length) {
+            this.owner = owner;
+            this.length = length;
+        }
+
+        long bytes() {
+            return (long) length * owner.elementBytes;
+        }
+
+        @Override
+        public A create(A o) {
+            A array = owner.newArray(length);
+            owned.add(array);
+            return array;
+        }
+
+        @Override
+        public boolean validate(A o) {
+            return true;
+        }
+
+        @Override
+        public void expire(A o) {
+            // left to the collector
+            owned.remove(o);
+        }
+
+        @Override
+        void missed(int n) {
+            super.missed(n);
+            misses.add(n);
+        }
+    }
+
+    /**
+     * Identity set of the arrays a class allocated and has not dropped. Entries are weak, so an
+     * array its borrower never releases is still collected. Lookups take no lock.
+     */
+    private static final class OwnedArrays {
+        private static final Entry TOMBSTONE = new Entry(null, 0, null);
+
+        private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+        private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(16);
+        private int live; // guarded by this
+        private int used; // guarded by this, tombstones included
+
+        private static final class Entry extends WeakReference<Object> {
+            final int hash;
+
+            Entry(Object array, int hash, ReferenceQueue<Object> queue) {
+                super(array, queue);
+                this.hash = hash;
+            }
+        }
+
+        boolean contains(Object array) {
+            AtomicReferenceArray<Entry> table = this.table;
+            int mask = table.length() - 1;
+            for (int i = System.identityHashCode(array) & mask; ; i = (i + 1) & mask) {
+                Entry e = table.get(i);
+                if (e == null) {
+                    return false;
+                }
+                if (e.get() == array) {
+                    return true;
+                }
+            }
+        }
+
+        synchronized void add(Object array) {
+            purge();
+            if ((used + 1) * 2 > table.length()) {
+                rehash();
+            }
+            insert(table, new Entry(array, System.identityHashCode(array), collected));
+            live++;
+            used++;
+        }
+
+        synchronized void remove(Object array) {
+            AtomicReferenceArray<Entry> table = this.table;
+            int mask = table.length() - 1;
+            for (int i = System.identityHashCode(array) & mask; ; i = (i + 1) & mask) {
+                Entry e = table.get(i);
+                if (e == null) {
+                    return;
+                }
+                if (e.get() == array) {
+                    e.clear();
+                    table.set(i, TOMBSTONE);
+                    live--;
+                    return;
+                }
+            }
+        }
+
+        // drops the entries of collected arrays, which were never released
+        private void purge() {
+            Object ref;
+            while ((ref = collected.poll()) != null) {
+                Entry entry = (Entry) ref;
+                AtomicReferenceArray<Entry> table = this.table;
+                int mask = table.length() - 1;
+                for (int i = entry.hash & mask; ; i = (i + 1) & mask) {
+                    Entry e = table.get(i);
+                    if (e == null) {
+                        // already left out by a rehash
+                        break;
+                    }
+                    if (e == entry) {
+                        table.set(i, TOMBSTONE);
+                        live--;
+                        break;
+                    }
+                }
+            }
+        }
+
+        // readers keep probing the old table, which still holds every live array
+        private void rehash() {
+            AtomicReferenceArray<Entry> old = table;
+            live = 0;
+            for (int i = 0; i < old.length(); i++) {
+                Entry e = old.get(i);
+                if (e != null && e != TOMBSTONE && e.get() != null) {
+                    live++;
+                }
+            }
+            int length = 16;
+            while ((live + 1) * 4 > length) {
+                length <<= 1;
+            }
+            AtomicReferenceArray<Entry> fresh = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < old.length(); i++) {
+                Entry e = old.get(i);
+                if (e != null && e != TOMBSTONE && e.get() != null) {
+                    insert(fresh, e);
+                }
+            }
+            used = live;
+            table = fresh;
+        }
+
+        private static void insert(AtomicReferenceArray<Entry> table, Entry entry) {
+            int mask = table.length() - 1;
+            int i = entry.hash & mask;
+            while (table.get(i) != null) {
+                i = (i + 1) & mask;
+            }
+            table.set(i, entry);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.saharw.pooledobject;
+
+/**
+ * Factory for the {@link ArrayPool}s of each primitive array type. The default classes run
+ * from 64 to 1M elements; borrows above the largest class are not pooled.
+ */
+public final class ArrayPools {
+
+    public static final int DEFAULT_MIN_LENGTH = 64;
+    public static final int DEFAULT_MAX_LENGTH = 1 << 20;
+
+    private ArrayPools() {
+    }
+
+    public static ArrayPool<byte[]> bytes() {
+        return bytes(DEFAULT_MIN_LENGTH, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param minLength length of the smallest class, a power of two
+     * @param maxLength length of the largest class, a power of two
+     */
+    public static ArrayPool<byte[]> bytes(int minLength, int maxLength) {
+        return new ArrayPool<byte[]>(minLength, maxLength, 1) {
+            @Override
+            byte[] newArray(int length) {
+                return new byte[length];
+            }
+
+            @Override
+            int lengthOf(byte[] array) {
+                return array.length;
+            }
+        };
+    }
+
+    public static ArrayPool<char[]> chars() {
+        return chars(DEFAULT_MIN_LENGTH, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @see #bytes(int, int)
+     */
+    public static ArrayPool<char[]> chars(int minLength, int maxLength) {
+        return new ArrayPool<char[]>(minLength, maxLength, 2) {
+            @Override
+            char[] newArray(int length) {
+                return new char[length];
+            }
+
+            @Override
+            int lengthOf(char[] array) {
+                return array.length;
+            }
+        };
+    }
+
+    public static ArrayPool<int[]> ints() {
+        return ints(DEFAULT_MIN_LENGTH, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @see #bytes(int, int)
+     */
+    public static ArrayPool<int[]> ints(int minLength, int maxLength) {
+        return new ArrayPool<int[]>(minLength, maxLength, 4) {
+            @Override
+            int[] newArray(int length) {
+                return new int[length];
+            }
+
+            @Override
+            int lengthOf(int[] array) {
+                return array.length;
+            }
+        };
+    }
+
+    public static ArrayPool<long[]> longs() {
+        return longs(DEFAULT_MIN_LENGTH, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @see #bytes(int, int)
+     */
+    public static ArrayPool<long[]> longs(int minLength, int maxLength) {
+        return new ArrayPool<long[]>(minLength, maxLength, 8) {
+            @Override
+            long[] newArray(int length) {
+                return new long[length];
+            }
+
+            @Override
+            int lengthOf(long[] array) {
+                return array.length;
+            }
+        };
+    }
+}
@@ -0,0 +1,404 @@
+package com.saharw.pooledobject;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of direct {@link ByteBuffer}s by power-of-two size class: {@link #borrow(int)} returns a
+ * buffer of at least the requested capacity. Each class is a {@link PooledObject}, so buffers
+ * get the same lock-free borrow path, per-thread cache, expiry and evictor as any pooled type.
+ * <p>
+ * Classes up to an eighth of the slab size are carved out of shared slabs, one native
+ * allocation per slab instead of one per buffer; a slab is freed once every buffer carved out
+ * of it has expired. Larger classes allocate one buffer each, and requests above the largest
+ * class are not pooled at all. Expired buffers have their native memory released right away.
+ * <p>
+ * The native memory held (idle and borrowed, whole slabs counted) is tracked in bytes. When
+ * allocating would go past {@code maxBytes}, idle buffers of every class are expired first, and
+ * buffers released while the pool is over budget are expired instead of kept.
+ * <p>
+ * The pool remembers the buffers it created, oversized ones included, so releasing a heap
+ * buffer, a slice or a buffer of another pool fails instead of handing foreign memory to the
+ * next borrower or freeing it. The per-thread cache is off by default, see
+ * {@link #setThreadCacheSize(int)}.
+ */
+public final class ByteBufferPool {
+
+    public static final int DEFAULT_MIN_CLASS_SIZE = 256;
+    public static final int DEFAULT_MAX_CLASS_SIZE = 1 << 20;
+    public static final int DEFAULT_SLAB_SIZE = 64 * 1024;
+    private static final int MIN_SLICES_PER_SLAB = 8;
+
+    private final int minShift;
+    private final int slabSize;
+    private final long maxBytes;
+    private final SizeClass[] classes;
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    // buffers above the largest class, only tracked so that release() frees nothing else
+    private final ReentrantLock oversizedLock = new ReentrantLock();
+    private final OwnedBuffers oversized = new OwnedBuffers(); // written under oversizedLock
+
+    public ByteBufferPool() {
+        this(DEFAULT_MIN_CLASS_SIZE, DEFAULT_MAX_CLASS_SIZE, DEFAULT_SLAB_SIZE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param minClassSize smallest class, a power of two
+     * @param maxClassSize largest pooled class, a power of two
+     * @param slabSize     native allocation carved into the small classes, a power of two
+     * @param maxBytes     native memory the pool tries to stay under
+     */
+    public ByteBufferPool(int minClassSize, int maxClassSize, int slabSize, long maxBytes) {
+        if (Integer.bitCount(minClassSize) != 1 || Integer.bitCount(maxClassSize) != 1
+                || Integer.bitCount(slabSize) != 1 || minClassSize > maxClassSize || maxBytes < 1) {
+            throw new IllegalArgumentException("invalid buffer pool: classes " + minClassSize + ".." + maxClassSize
+                    + ", slab " + slabSize + ", max bytes " + maxBytes);
+        }
+        this.minShift = Integer.numberOfTrailingZeros(minClassSize);
+        this.slabSize = slabSize;
+        this.maxBytes = maxBytes;
+        classes = new SizeClass[Integer.numberOfTrailingZeros(maxClassSize) - minShift + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass(minClassSize << i);
+        }
+    }
+
+    /**
+     * @return a cleared big-endian direct buffer with a capacity of at least {@code minCapacity}
+     * (the size of its class), to be given back with {@link #release(ByteBuffer)}
+     */
+    public ByteBuffer borrow(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("capacity must be >= 0, was " + minCapacity);
+        }
+        int index = indexFor(minCapacity);
+        if (index >= classes.length) {
+            // larger than any class, not pooled
+            ByteBuffer buffer = ByteBuffer.allocateDirect(minCapacity);
+            oversizedLock.lock();
+            try {
+                oversized.add(buffer);
+            } finally {
+                oversizedLock.unlock();
+            }
+            return buffer;
+        }
+        ByteBuffer buffer = classes[index].checkOut();
+        buffer.clear();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer obtained from {@link #borrow(int)}; it must not be used afterwards.
+     * Buffers larger than any class were not pooled and have their memory freed.
+     *
+     * @throws IllegalArgumentException if the buffer is not direct or was not borrowed from this
+     *                                  pool
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("not a direct buffer: " + buffer);
+        }
+        if (buffer.capacity() > classes[classes.length - 1].size) {
+            boolean borrowed;
+            oversizedLock.lock();
+            try {
+                borrowed = oversized.remove(buffer);
+            } finally {
+                oversizedLock.unlock();
+            }
+            if (!borrowed) {
+                throw new IllegalArgumentException("buffer not borrowed from this pool: " + buffer);
+            }
+            DirectBuffers.free(buffer);
+            return;
+        }
+        SizeClass sizeClass = classOf(buffer.capacity());
+        if (sizeClass == null || !sizeClass.owned.contains(buffer)) {
+            throw new IllegalArgumentException("buffer not borrowed from this pool: " + buffer);
+        }
+        if (allocatedBytes.get() > maxBytes) {
+            sizeClass.discard(buffer);
+        } else {
+            sizeClass.checkIn(buffer);
+        }
+    }
+
+    /**
+     * Per-thread cache of each class up to the slab size, off by default; larger classes are
+     * never cached per thread. Worth enabling for threads that live as long as the pool:
+     * buffers cached by a thread that dies are only taken back by the evictor or a trim.
+     */
+    public void setThreadCacheSize(int size) {
+        for (SizeClass sizeClass : classes) {
+            sizeClass.setThreadCacheSize(sizeClass.size <= slabSize ? size : 0);
+        }
+    }
+
+    /**
+     * Idle time after which a buffer is expired, see {@link PooledObject#setExpirationTime(long)}.
+     */
+    public void setExpirationTime(long expirationTime) {
+        for (SizeClass sizeClass : classes) {
+            sizeClass.setExpirationTime(expirationTime);
+        }
+    }
+
+    /**
+     * Background expiry of idle buffers, see {@link PooledObject#setEvictionPolicy(long, int)}.
+     */
+    public void setEvictionPolicy(long periodMillis, int batchSize) {
+        for (SizeClass sizeClass : classes) {
+            sizeClass.setEvictionPolicy(periodMillis, batchSize);
+        }
+    }
+
+    /**
+     * @return native bytes held by the pool, idle or borrowed, slabs counted whole
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return bytes of the buffers idle in the shared stores (thread caches not included)
+     */
+    public long getIdleBytes() {
+        long bytes = 0L;
+        for (SizeClass sizeClass : classes) {
+            bytes += (long) sizeClass.getIdleCount() * sizeClass.size;
+        }
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private int indexFor(int capacity) {
+        if (capacity <= 1 << minShift) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - minShift;
+    }
+
+    private SizeClass classOf(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            return null;
+        }
+        int index = Integer.numberOfTrailingZeros(capacity) - minShift;
+        return index >= 0 && index < classes.length ? classes[index] : null;
+    }
+
+    // makes room for an allocation of n bytes, best effort, and counts it
+    private void allocating(int n) {
+        if (allocatedBytes.get() + n > maxBytes) {
+            for (SizeClass sizeClass : classes) {
+                sizeClass.trimIdle(sizeClass.getIdleCount(), 0L);
+            }
+        }
+        allocatedBytes.addAndGet(n);
+    }
+
+    // identity set of the buffers a class created, written under the class lock (the oversized
+    // buffers under their own lock) and read without it; open addressing with linear probing,
+    // removed entries are left as tombstones
+    private static final class OwnedBuffers {
+        private static final ByteBuffer TOMBSTONE = ByteBuffer.allocate(0);
+
+        private volatile AtomicReferenceArray<ByteBuffer> table = new AtomicReferenceArray<>(16);
+        private int live; // guarded by the class lock
+        private int used; // guarded by the class lock, tombstones included
+
+        boolean contains(ByteBuffer buffer) {
+            AtomicReferenceArray<ByteBuffer> table = this.table;
+            int mask = table.length() - 1;
+            for (int i = System.identityHashCode(buffer) & mask; ; i = (i + 1) & mask) {
+                ByteBuffer e = table.get(i);
+                if (e == buffer) {
+                    return true;
+                }
+                if (e == null) {
+                    return false;
+                }
+            }
+        }
+
+        void add(ByteBuffer buffer) {
+            if ((used + 1) * 2 > table.length()) {
+                rehash();
+            }
+            insert(table, buffer);
+            live++;
+            used++;
+        }
+
+        boolean remove(ByteBuffer buffer) {
+            AtomicReferenceArray<ByteBuffer> table = this.table;
+            int mask = table.length() - 1;
+            for (int i = System.identityHashCode(buffer) & mask; ; i = (i + 1) & mask) {
+                ByteBuffer e = table.get(i);
+                if (e == null) {
+                    return false;
+                }
+                if (e == buffer) {
+                    table.set(i, TOMBSTONE);
+                    live--;
+                    return true;
+                }
+            }
+        }
+
+        // readers keep probing the old table, which still holds every live buffer
+        private void rehash() {
+            AtomicReferenceArray<ByteBuffer> old = table;
+            int length = 16;
+            while ((live + 1) * 4 > length) {
+                length <<= 1;
+            }
+            AtomicReferenceArray<ByteBuffer> fresh = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < old.length(); i++) {
+                ByteBuffer e = old.get(i);
+                if (e != null && e != TOMBSTONE) {
+                    insert(fresh, e);
+                }
+            }
+            used = live;
+            table = fresh;
+        }
+
+        private static void insert(AtomicReferenceArray<ByteBuffer> table, ByteBuffer buffer) {
+            int mask = table.length() - 1;
+            int i = System.identityHashCode(buffer) & mask;
+            while (table.get(i) != null) {
+                i = (i + 1) & mask;
+            }
+            table.set(i, buffer);
+        }
+    }
+
+    private static final class Slab {
+        final ByteBuffer memory;
+        final int slices;
+        int carved;
+        int live;
+
+        Slab(ByteBuffer memory, int slices) {
+            this.memory = memory;
+            this.slices = slices;
+        }
+    }
+
+    private final class SizeClass extends PooledObject<ByteBuffer> {
+        final int size;
+        final boolean carved;
+        private final ReentrantLock lock = new ReentrantLock();
+        private Slab slab; // guarded by lock, the slab being carved
+        private final Map<ByteBuffer, Slab> slabs = new IdentityHashMap<>(); // guarded by lock
+        final OwnedBuffers owned = new OwnedBuffers(); // written under lock
+
+        SizeClass(int size) {
+            this.size = size;
+            this.carved = (long) size * MIN_SLICES_PER_SLAB <= slabSize;
+        }
+
+        @Override
+        public ByteBuffer create(ByteBuffer o) {
+            if (!carved) {
+                allocating(size);
+                ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+                lock.lock();
+                try {
+                    owned.add(buffer);
+                } finally {
+                    lock.unlock();
+                }
+                return buffer;
+            }
+            lock.lock();
+            try {
+                if (slab != null && slab.carved < slab.slices) {
+                    return carve();
+                }
+            } finally {
+                lock.unlock();
+            }
+            // the slab is used up; the next one is allocated without the lock, as making room for
+            // it expires idle buffers of other classes, which takes their locks
+            allocating(slabSize);
+            Slab fresh = new Slab(ByteBuffer.allocateDirect(slabSize), slabSize / size);
+            lock.lock();
+            try {
+                if (slab == null || slab.carved == slab.slices) {
+                    slab = fresh;
+                    fresh = null;
+                }
+                return carve();
+            } finally {
+                lock.unlock();
+                if (fresh != null) {
+                    // another thread put a slab in place meanwhile
+                    DirectBuffers.free(fresh.memory);
+                    allocatedBytes.addAndGet(-slabSize);
+                }
+            }
+        }
+
+        // guarded by lock, the slab has a slice left
+        private ByteBuffer carve() {
+            ByteBuffer window = slab.memory.duplicate();
+            window.position(slab.carved * size);
+            window.limit(window.position() + size);
+            ByteBuffer slice = window.slice();
+            slab.carved++;
+            slab.live++;
+            slabs.put(slice, slab);
+            owned.add(slice);
+            return slice;
+        }
+
+        @Override
+        public boolean validate(ByteBuffer o) {
+            return true;
+        }
+
+        @Override
+        public void expire(ByteBuffer o) {
+            if (!carved) {
+                lock.lock();
+                try {
+                    owned.remove(o);
+                } finally {
+                    lock.unlock();
+                }
+                DirectBuffers.free(o);
+                allocatedBytes.addAndGet(-size);
+                return;
+            }
+            Slab freed = null;
+            lock.lock();
+            try {
+                owned.remove(o);
+                Slab s = slabs.remove(o);
+                if (s != null && --s.live == 0 && s.carved == s.slices) {
+                    if (s == slab) {
+                        slab = null;
+                    }
+                    freed = s;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (freed != null) {
+                DirectBuffers.free(freed.memory);
+                allocatedBytes.addAndGet(-slabSize);
+            }
+        }
+    }
+}
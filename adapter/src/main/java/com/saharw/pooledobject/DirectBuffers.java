@@ -0,0 +1,63 @@
+package com.saharw.pooledobject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees the native memory of a direct {@link ByteBuffer} right away instead of waiting for the
+ * garbage collector, through whichever cleaner the runtime has: {@code Unsafe.invokeCleaner}
+ * (Java 9+) or the buffer's {@code cleaner().clean()} (Java 8). Where neither is reachable
+ * (Android, restricted runtimes) freeing is left to the collector.
+ */
+final class DirectBuffers {
+
+    private DirectBuffers() {
+    }
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Method m = type.getMethod("invokeCleaner", ByteBuffer.class);
+            Field f = type.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+            invokeCleaner = m;
+        } catch (Exception e) {
+            // before Java 9, fall back to the cleaner of each buffer
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * Releases the native memory of {@code buffer}, which must not be used afterwards.
+     * Slices and duplicates do not own memory and are ignored, as are heap buffers.
+     */
+    static void free(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    Method clean = cleaner.getClass().getMethod("clean");
+                    clean.setAccessible(true);
+                    clean.invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            // not a memory owner, or no access to the cleaner: the collector frees it
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.saharw.pooledobject;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free FIFO {@link IdleStore}: borrowers get the object that has been idle the longest, so
+ * use (and wear) is spread evenly over all objects. The price is that the object handed out is
+ * also the coldest in the CPU caches, and no object stays idle long enough to expire while the
+ * pool is in use.
+ */
+final class FifoIdleStore<T> implements IdleStore<T> {
+
+    private static final class Node<T> {
+        final T item;
+        final long idleSince;
+
+        Node(T item, long idleSince) {
+            this.item = item;
+            this.idleSince = idleSince;
+        }
+    }
+
+    private final Queue<Node<T>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    @Override
+    public boolean offer(T o, long idleSince) {
+        queue.offer(new Node<>(o, idleSince));
+        size.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public T poll(Filter<T> filter) {
+        Node<T> n;
+        while ((n = queue.poll()) != null) {
+            size.decrementAndGet();
+            if (filter.accept(n.item, n.idleSince)) {
+                return n.item;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int evict(Filter<T> filter, int max) {
+        // the oldest are at the head; the ones kept go to the tail with their original timestamp,
+        // the limit keeps them from being visited twice
+        int limit = Math.min(max, size.get());
+        int visited = 0;
+        Node<T> n;
+        while (visited < limit && (n = queue.poll()) != null) {
+            size.decrementAndGet();
+            visited++;
+            if (filter.accept(n.item, n.idleSince)) {
+                queue.offer(n);
+                size.incrementAndGet();
+            }
+        }
+        return visited;
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+}
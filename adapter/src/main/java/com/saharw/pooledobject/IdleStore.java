@@ -0,0 +1,48 @@
+package com.saharw.pooledobject;
+
+/**
+ * Holds the idle (checked in) objects of a {@link PooledObject}.
+ * Implementations must be thread-safe and must not hold a lock while calling a {@link Filter}.
+ */
+public interface IdleStore<T> {
+
+    /**
+     * Decides what happens to an idle object once it has been taken out of the store.
+     */
+    interface Filter<T> {
+        /**
+         * @param o         the idle object, already removed from the store
+         * @param idleSince time (in pool clock millis) at which the object was checked in
+         * @return true to keep the object, false if the filter has disposed of it
+         */
+        boolean accept(T o, long idleSince);
+    }
+
+    /**
+     * Adds an idle object.
+     *
+     * @return false if the store is full and did not take the object
+     */
+    boolean offer(T o, long idleSince);
+
+    /**
+     * Removes idle objects until one is accepted by the filter.
+     *
+     * @return the accepted object, or null if the store ran empty
+     */
+    T poll(Filter<T> filter);
+
+    /**
+     * Takes out up to {@code max} of the oldest idle objects and passes them to the filter;
+     * the ones it accepts are put back (possibly no longer in their original position).
+     * Used by the background evictor, not on the borrow path.
+     *
+     * @return number of objects passed to the filter
+     */
+    int evict(Filter<T> filter, int max);
+
+    /**
+     * @return approximate number of idle objects
+     */
+    int size();
+}
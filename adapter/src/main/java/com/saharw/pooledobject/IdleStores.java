@@ -0,0 +1,63 @@
+package com.saharw.pooledobject;
+
+/**
+ * Factory for the {@link IdleStore} implementations shipped with the runtime.
+ */
+public final class IdleStores {
+
+    private IdleStores() {
+    }
+
+    /**
+     * Single lock-free stack, the default store of a {@link PooledObject}. Hands out the most
+     * recently checked in object, the one most likely still in the CPU caches, and leaves the
+     * least used ones at the bottom where they expire.
+     */
+    public static <T> IdleStore<T> lifo() {
+        return new LockFreeIdleStore<>();
+    }
+
+    /**
+     * Lock-free queue handing out the object idle the longest, spreading use evenly over all
+     * objects at the cost of cache locality; while the pool is in use nothing expires.
+     */
+    public static <T> IdleStore<T> fifo() {
+        return new FifoIdleStore<>();
+    }
+
+    /**
+     * Like {@link #slots(int)}, but every borrow starts looking at a random slot, so each idle
+     * object is about as likely to come next, with no ordering to maintain. Same costs as
+     * {@link #slots(int)}.
+     */
+    public static <T> IdleStore<T> random(int capacity) {
+        return new SlotIdleStore<>(capacity, true);
+    }
+
+    /**
+     * Up to {@code capacity} idle objects kept by identity in indexed slots, with primitive
+     * timestamps: offer and poll allocate nothing and never call the pooled type's
+     * {@code hashCode()}/{@code equals()}. Objects checked in while it is full are expired.
+     * A borrow finds idle slots through a bitmap, reading about {@code capacity / 4096} words
+     * when the store is nearly empty; a check in looks for a free slot by scanning, which gets
+     * slower as the store fills up, so size the capacity with headroom over the max idle.
+     */
+    public static <T> IdleStore<T> slots(int capacity) {
+        return new SlotIdleStore<>(capacity);
+    }
+
+    /**
+     * Lock-free stacks split into {@code stripes} sub-pools (rounded up to a power of two).
+     * Threads borrow from their home stripe and steal from the others when it is empty.
+     */
+    public static <T> IdleStore<T> striped(int stripes) {
+        return new StripedIdleStore<>(stripes);
+    }
+
+    /**
+     * {@link #striped(int)} with one stripe per available processor.
+     */
+    public static <T> IdleStore<T> striped() {
+        return striped(Runtime.getRuntime().availableProcessors());
+    }
+}
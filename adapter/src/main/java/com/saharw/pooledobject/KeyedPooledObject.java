@@ -0,0 +1,488 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool keeping an independent set of idle objects per key (a manufacturer, a tenant...), objects
+ * created for one key never being handed out for another. A key only holds a lock-free idle
+ * stack and a count of its live objects, created on first use; the configuration, the waiting
+ * and the background eviction are shared by all keys:
+ * <ul>
+ * <li>{@link #setMaxPerKey(int)} bounds the live objects of each key, a checkOut on a full key
+ * waiting for a checkIn of that key;</li>
+ * <li>{@link #setMaxTotal(int)} bounds the live objects of all keys together. Creating past it
+ * expires an idle object of the least recently used key, and waits for one to become idle when
+ * every object is checked out;</li>
+ * <li>{@link #setMaxKeys(int)} bounds the number of keys; past it the least recently used key
+ * with nothing checked out is dropped with its idle objects;</li>
+ * <li>{@link #setEvictionPolicy(long, int)} runs a single background task for all keys, which
+ * also drops keys left without objects.</li>
+ * </ul>
+ * Idle objects are checked for expiry and validated when borrowed. Least recently used keys are
+ * found by scanning the keys, which only happens once a bound is reached.
+ *
+ * @param <K> key type, with the usual {@code hashCode()}/{@code equals()} contract
+ * @param <T> pooled type
+ */
+public abstract class KeyedPooledObject<K, T> {
+
+    private final ConcurrentMap<K, Key> keys = new ConcurrentHashMap<>();
+    private volatile int maxPerKey = Integer.MAX_VALUE;
+    private volatile int maxTotal = Integer.MAX_VALUE;
+    private volatile int maxKeys = Integer.MAX_VALUE;
+    private volatile long expirationTime = 30000; // 30 seconds
+    private final PoolClock clock = PoolClock.system();
+
+    // objects created and not yet expired, all keys together
+    private final AtomicInteger total = new AtomicInteger();
+    // bumped whenever an object may have become available (checked in, or a slot freed), see await()
+    private final AtomicLong slotEvents = new AtomicLong();
+    private final ReentrantLock slotLock = new ReentrantLock();
+    private final Condition slotFreed = slotLock.newCondition();
+    private volatile int slotWaiters; // written under slotLock
+
+    private ScheduledFuture<?> evictor; // guarded by configLock
+    private final ReentrantLock configLock = new ReentrantLock();
+    private volatile int evictBatchSize;
+    private final Runnable evictTask = new Runnable() {
+        @Override
+        public void run() {
+            for (Key k : keys.values()) {
+                try {
+                    trimIdle(k, evictBatchSize, expirationTime);
+                } catch (RuntimeException e) {
+                    // keep the evictor scheduled, an expire() failure must not stop it
+                }
+                if (k.size.get() == 0) {
+                    retire(k);
+                }
+            }
+        }
+    };
+
+    public abstract T create(K key);
+    public abstract boolean validate(K key, T o);
+    public abstract void expire(K key, T o);
+
+    /**
+     * Borrows an object of {@code key}, waiting as long as the key or the total is full.
+     */
+    public T checkOut(K key) {
+        try {
+            return checkOut(key, false, 0L);
+        } catch (InterruptedException e) {
+            // not interruptible
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Like {@link #checkOut(Object)}, but when the key or the total is full waits at most
+     * {@code timeout} for an object to be checked in or expire.
+     *
+     * @return the object, or null if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public T checkOut(K key, long timeout, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return checkOut(key, true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    private T checkOut(K key, boolean timed, long deadline) throws InterruptedException {
+        if (key == null) {
+            throw new IllegalArgumentException("key must not be null");
+        }
+        for (;;) {
+            Key k = key(key);
+            if (!k.pin()) {
+                // dropped as least recently used in the meantime
+                continue;
+            }
+            T o = null;
+            try {
+                o = borrow(k, timed, deadline);
+                if (o != null) {
+                    long now = clock.millis();
+                    if (k.lastUsed != now) {
+                        k.lastUsed = now;
+                    }
+                }
+                return o;
+            } finally {
+                if (o == null) {
+                    k.unpin();
+                    // timed out or create() failed on a key left without objects, do not keep it
+                    if (k.size.get() == 0) {
+                        retire(k);
+                    }
+                }
+            }
+        }
+    }
+
+    private T borrow(Key k, boolean timed, long deadline) throws InterruptedException {
+        for (;;) {
+            long events = slotEvents.get();
+            T o = k.idle.poll(k);
+            if (o != null) {
+                return o;
+            }
+            if (reserve(k)) {
+                boolean created = false;
+                try {
+                    o = create(k.key);
+                    created = true;
+                    return o;
+                } finally {
+                    if (!created) {
+                        release(k);
+                    }
+                }
+            }
+            if (!await(events, timed, deadline)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns an object borrowed with {@link #checkOut(Object)} for the same key.
+     */
+    public void checkIn(K key, T o) {
+        Key k = keys.get(key);
+        if (k == null) {
+            throw new IllegalArgumentException("nothing checked out for key " + key);
+        }
+        k.idle.offer(o, clock.millis());
+        k.unpin();
+        // waiters of this key can take it, and creators of other keys expire it; always counted,
+        // a borrower may be between its last look and going to sleep
+        slotEvent();
+    }
+
+    /**
+     * Bounds the live objects (idle and checked out) of each key.
+     */
+    public void setMaxPerKey(int maxPerKey) {
+        if (maxPerKey < 1) {
+            throw new IllegalArgumentException("max per key must be >= 1, was " + maxPerKey);
+        }
+        this.maxPerKey = maxPerKey;
+        slotEvent();
+    }
+
+    public int getMaxPerKey() {
+        return maxPerKey;
+    }
+
+    /**
+     * Bounds the live objects of all keys together. Lowering it below the current total does
+     * not expire anything, creations wait until the total is back under the bound.
+     */
+    public void setMaxTotal(int maxTotal) {
+        if (maxTotal < 1) {
+            throw new IllegalArgumentException("max total must be >= 1, was " + maxTotal);
+        }
+        this.maxTotal = maxTotal;
+        slotEvent();
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * Bounds the number of keys; the least recently used keys with nothing checked out are
+     * dropped to make room for new ones.
+     */
+    public void setMaxKeys(int maxKeys) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("max keys must be >= 1, was " + maxKeys);
+        }
+        this.maxKeys = maxKeys;
+        trimKeys();
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    /**
+     * Idle time after which an object expires, for every key.
+     */
+    public void setExpirationTime(long expirationTime) {
+        this.expirationTime = expirationTime;
+    }
+
+    public long getExpirationTime() {
+        return expirationTime;
+    }
+
+    /**
+     * Every {@code periodMillis} one background task visits every key, expiring up to
+     * {@code batchSize} of its objects idle past the expiration time and dropping the keys left
+     * without objects.
+     *
+     * @param periodMillis run period, 0 stops the task
+     */
+    public void setEvictionPolicy(long periodMillis, int batchSize) {
+        if (periodMillis < 0 || batchSize < 1) {
+            throw new IllegalArgumentException("invalid eviction policy: period " + periodMillis
+                    + "ms, batch size " + batchSize);
+        }
+        configLock.lock();
+        try {
+            if (evictor != null) {
+                evictor.cancel(false);
+                evictor = null;
+            }
+            evictBatchSize = batchSize;
+            if (periodMillis > 0) {
+                evictor = PoolScheduler.get().scheduleWithFixedDelay(evictTask, periodMillis, periodMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            configLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of live objects of all keys, idle or checked out
+     */
+    public int getSize() {
+        return Math.max(0, total.get());
+    }
+
+    /**
+     * @return number of live objects of {@code key}, idle or checked out
+     */
+    public int getSize(K key) {
+        Key k = keys.get(key);
+        return k != null ? Math.max(0, k.size.get()) : 0;
+    }
+
+    /**
+     * @return approximate number of idle objects of {@code key}
+     */
+    public int getIdleCount(K key) {
+        Key k = keys.get(key);
+        return k != null ? k.idle.size() : 0;
+    }
+
+    /**
+     * @return number of keys
+     */
+    public int getKeyCount() {
+        return keys.size();
+    }
+
+    private Key key(K key) {
+        Key k = keys.get(key);
+        if (k != null) {
+            return k;
+        }
+        Key created = new Key(key);
+        k = keys.putIfAbsent(key, created);
+        if (k != null) {
+            return k;
+        }
+        if (keys.size() > maxKeys) {
+            trimKeys();
+        }
+        return created;
+    }
+
+    private void trimKeys() {
+        while (keys.size() > maxKeys) {
+            Key lru = null;
+            for (Key k : keys.values()) {
+                if (k.pins.get() == 0 && (lru == null || k.lastUsed < lru.lastUsed)) {
+                    lru = k;
+                }
+            }
+            if (lru == null || !retire(lru)) {
+                // every key has objects checked out, or raced with a borrower
+                return;
+            }
+        }
+    }
+
+    // drops a key with nothing checked out, expiring its idle objects
+    private boolean retire(Key k) {
+        if (!k.pins.compareAndSet(0, -1)) {
+            return false;
+        }
+        keys.remove(k.key, k);
+        trimIdle(k, Integer.MAX_VALUE, 0L);
+        return true;
+    }
+
+    // expires up to n of the oldest idle objects of a key, those idle for at least idleMillis
+    private int trimIdle(final Key k, int n, final long idleMillis) {
+        final long now = clock.millis();
+        final int[] trimmed = new int[1];
+        k.idle.evict(new IdleStore.Filter<T>() {
+            @Override
+            public boolean accept(T o, long idleSince) {
+                if (now - idleSince < idleMillis) {
+                    return true;
+                }
+                trimmed[0]++;
+                discard(k, o);
+                return false;
+            }
+        }, n);
+        if (idleMillis > 0L && k.pins.get() < 0) {
+            // the key was dropped while the filter ran, what it kept has nowhere to go
+            trimmed[0] += trimIdle(k, Integer.MAX_VALUE, 0L);
+        }
+        return trimmed[0];
+    }
+
+    // expires one idle object of the least recently used key holding any
+    private boolean evictLru() {
+        for (;;) {
+            Key lru = null;
+            for (Key k : keys.values()) {
+                if (k.idle.size() > 0 && (lru == null || k.lastUsed < lru.lastUsed)) {
+                    lru = k;
+                }
+            }
+            if (lru == null) {
+                return false;
+            }
+            if (trimIdle(lru, 1, 0L) > 0) {
+                return true;
+            }
+        }
+    }
+
+    // takes a slot of the key, then one of the total, expiring an idle object of another key if
+    // the total is reached
+    private boolean reserve(Key k) {
+        for (;;) {
+            int n = k.size.get();
+            if (n >= maxPerKey) {
+                return false;
+            }
+            if (k.size.compareAndSet(n, n + 1)) {
+                break;
+            }
+        }
+        for (;;) {
+            int n = total.get();
+            if (n < maxTotal) {
+                if (total.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            } else if (!evictLru()) {
+                // everything is checked out: nobody can create until a checkIn or an expiry,
+                // both of which wake the waiters, so the key slot goes back silently
+                k.size.decrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    private void release(Key k) {
+        k.size.decrementAndGet();
+        total.decrementAndGet();
+        slotEvent();
+    }
+
+    private void discard(Key k, T o) {
+        try {
+            expire(k.key, o);
+        } finally {
+            release(k);
+        }
+    }
+
+    // waits for a checkIn or a freed slot after events was read; false once the deadline passed
+    private boolean await(long events, boolean timed, long deadline) throws InterruptedException {
+        slotLock.lock();
+        try {
+            slotWaiters++;
+            try {
+                while (slotEvents.get() == events) {
+                    if (!timed) {
+                        slotFreed.awaitUninterruptibly();
+                        continue;
+                    }
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0L) {
+                        return false;
+                    }
+                    slotFreed.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                slotWaiters--;
+            }
+        } finally {
+            slotLock.unlock();
+        }
+    }
+
+    private void slotEvent() {
+        slotEvents.incrementAndGet();
+        if (slotWaiters > 0) {
+            slotLock.lock();
+            try {
+                slotFreed.signalAll();
+            } finally {
+                slotLock.unlock();
+            }
+        }
+    }
+
+    // what the pool keeps per key; also the filter of its borrows
+    private final class Key implements IdleStore.Filter<T> {
+        final K key;
+        final IdleStore<T> idle = new LockFreeIdleStore<>();
+        // live objects of the key, idle or checked out
+        final AtomicInteger size = new AtomicInteger();
+        // in-flight checkOuts plus objects checked out, -1 once dropped
+        final AtomicInteger pins = new AtomicInteger();
+        volatile long lastUsed;
+
+        Key(K key) {
+            this.key = key;
+            this.lastUsed = clock.millis();
+        }
+
+        boolean pin() {
+            for (;;) {
+                int p = pins.get();
+                if (p < 0) {
+                    return false;
+                }
+                if (pins.compareAndSet(p, p + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void unpin() {
+            pins.decrementAndGet();
+        }
+
+        @Override
+        public boolean accept(T o, long idleSince) {
+            if (clock.millis() - idleSince > expirationTime || !validate(key, o)) {
+                discard(this, o);
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds. Buckets split every power of two in four,
+ * so a percentile is reported within 25% of the true value, from 0 up to 2^63 ns. Recording
+ * allocates nothing and adds to a per-thread stripe of the counts; reading sums the stripes and
+ * is meant for periodic sampling.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+    private static final int MAX_STRIPES = 8;
+
+    private final AtomicLongArray counts;
+    private final int mask;
+    private final StripedCounter total = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram() {
+        int n = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+        counts = new AtomicLongArray(n * BUCKETS);
+        mask = n - 1;
+    }
+
+    void record(long nanos) {
+        if (nanos < 0L) {
+            // clock went backwards
+            nanos = 0L;
+        }
+        counts.getAndIncrement((ThreadProbe.get() & mask) * BUCKETS + index(nanos));
+        total.add(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+            // lost against another new maximum
+        }
+    }
+
+    /**
+     * @return number of durations recorded
+     */
+    public long getCount() {
+        long count = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return mean duration in nanoseconds, 0 when nothing was recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0L ? 0.0 : (double) total.sum() / count;
+    }
+
+    /**
+     * @return longest duration recorded, in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return upper bound in nanoseconds of the durations below {@code percentile}, 0 when
+     * nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("percentile must be in 0..100, was " + percentile);
+        }
+        long[] buckets = new long[BUCKETS];
+        long count = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            buckets[i % BUCKETS] += c;
+            count += c;
+        }
+        if (count == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + getCount() + ", p50=" + getPercentile(50) + "ns, p99="
+                + getPercentile(99) + "ns, max=" + getMax() + "ns}";
+    }
+
+    static int index(long nanos) {
+        if (nanos < SUB) {
+            return (int) nanos;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int exp = index / SUB + SUB_BITS - 1;
+        long width = 1L << (exp - SUB_BITS);
+        return (SUB + index % SUB) * width + width - 1;
+    }
+}
@@ -0,0 +1,124 @@
+package com.saharw.pooledobject;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sampled leak tracking of a {@link PooledObject}. One checkOut in {@code sampleRate} (per thread)
+ * records its call site in a weak reference; checkIn forgets it again. A periodic scan reports
+ * tracked objects held past the threshold and those the garbage collector found unreachable.
+ * <p>
+ * Tracked objects sit in a small open-addressed table indexed by identity hash, so checkIn looks
+ * them up without allocating, and skips the lookup entirely while nothing is tracked. A sample
+ * that finds its neighbourhood of the table full is dropped.
+ */
+final class LeakDetector<T> {
+
+    private static final int CAPACITY = 1024;
+    private static final int PROBES = 8;
+
+    private static final class Track extends WeakReference<Object> {
+        final Throwable callSite;
+        final long since;
+        final int slot;
+        volatile boolean reported;
+
+        Track(Object o, ReferenceQueue<Object> queue, int slot, long since) {
+            super(o, queue);
+            this.callSite = new Throwable("checked out here");
+            this.slot = slot;
+            this.since = since;
+        }
+    }
+
+    private final PooledObject<T> pool;
+    private final int sampleRate;
+    private final long holdMillis;
+    private final LeakListener listener;
+    private final AtomicReferenceArray<Track> tracks = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicInteger tracked = new AtomicInteger();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    // borrows left before the next sample, per thread; starts spread so threads do not sample in step
+    private final ThreadLocal<int[]> countdown = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[]{1 + (ThreadProbe.get() & Integer.MAX_VALUE) % sampleRate};
+        }
+    };
+
+    final Runnable scanTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                scan();
+            } catch (RuntimeException e) {
+                // keep scanning, a listener failure must not stop detection
+            }
+        }
+    };
+
+    LeakDetector(PooledObject<T> pool, int sampleRate, long holdMillis, LeakListener listener) {
+        this.pool = pool;
+        this.sampleRate = sampleRate;
+        this.holdMillis = holdMillis;
+        this.listener = listener;
+    }
+
+    void borrowed(T o) {
+        int[] left = countdown.get();
+        if (--left[0] > 0) {
+            return;
+        }
+        left[0] = sampleRate;
+        int h = System.identityHashCode(o);
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (h + i) & (CAPACITY - 1);
+            if (tracks.get(slot) == null
+                    && tracks.compareAndSet(slot, null, new Track(o, collected, slot, pool.getClock().millis()))) {
+                tracked.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    void returned(T o) {
+        if (tracked.get() == 0) {
+            return;
+        }
+        int h = System.identityHashCode(o);
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (h + i) & (CAPACITY - 1);
+            Track t = tracks.get(slot);
+            if (t != null && t.get() == o && tracks.compareAndSet(slot, t, null)) {
+                tracked.decrementAndGet();
+                // a cleared reference is never enqueued
+                t.clear();
+                return;
+            }
+        }
+    }
+
+    private void scan() {
+        long now = pool.getClock().millis();
+        Track t;
+        while ((t = (Track) collected.poll()) != null) {
+            if (tracks.compareAndSet(t.slot, t, null)) {
+                tracked.decrementAndGet();
+                pool.leaked();
+                listener.onLeak(t.callSite, now - t.since, true);
+            }
+        }
+        if (holdMillis <= 0 || tracked.get() == 0) {
+            return;
+        }
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            t = tracks.get(slot);
+            if (t != null && !t.reported && now - t.since > holdMillis && t.get() != null) {
+                t.reported = true;
+                listener.onLeak(t.callSite, now - t.since, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.saharw.pooledobject;
+
+/**
+ * Receives the leaks found by {@link PooledObject#setLeakDetection(int, long, LeakListener)}.
+ * Called from the shared pool scheduler thread, so implementations should return quickly.
+ */
+public interface LeakListener {
+
+    /**
+     * @param callSite    stack trace captured by the sampled checkOut
+     * @param heldMillis  time since that checkOut, by the pool clock
+     * @param unreachable true if the object was garbage collected without being checked in
+     *                    (its pool slot has been given back), false if it is merely held longer
+     *                    than the threshold; each sampled object is reported at most once per case
+     */
+    void onLeak(Throwable callSite, long heldMillis, boolean unreachable);
+}
@@ -0,0 +1,97 @@
+package com.saharw.pooledobject;
+
+import java.io.Closeable;
+
+/**
+ * Borrowed object that goes back to its pool on {@link #close()}, for try-with-resources:
+ * <pre>
+ * try (Lease&lt;Guitar&gt; l = Pooled_Guitar.pool.lease()) {
+ *     play(l.get());
+ * }
+ * </pre>
+ * Leases are recycled through a small per-thread cache, so borrowing this way allocates nothing
+ * once warm. The flip side: a lease must not be touched after close, it may already stand for
+ * someone else's object.
+ * <p>
+ * Implements {@link Closeable} rather than {@link AutoCloseable} directly so the runtime still
+ * loads on Android releases older than API 19; it works with try-with-resources all the same.
+ */
+public final class Lease<T> implements Closeable {
+
+    private static final int CACHE_SIZE = 16;
+
+    // closed leases of the current thread, linked through next
+    private static final class Cache {
+        Lease<?> head;
+        int size;
+    }
+
+    private static final ThreadLocal<Cache> CACHE = new ThreadLocal<Cache>() {
+        @Override
+        protected Cache initialValue() {
+            return new Cache();
+        }
+    };
+
+    private PooledObject<T> pool;
+    private T object;
+    private Lease<?> next;
+
+    private Lease() {
+    }
+
+    static <T> Lease<T> of(PooledObject<T> pool, T object) {
+        Cache cache = CACHE.get();
+        Lease<?> recycled = cache.head;
+        Lease<T> lease;
+        if (recycled != null) {
+            cache.head = recycled.next;
+            cache.size--;
+            recycled.next = null;
+            @SuppressWarnings("unchecked")
+            Lease<T> l = (Lease<T>) recycled;
+            lease = l;
+        } else {
+            lease = new Lease<>();
+        }
+        lease.pool = pool;
+        lease.object = object;
+        return lease;
+    }
+
+    /**
+     * @return the borrowed object
+     * @throws IllegalStateException if the lease was closed
+     */
+    public T get() {
+        T o = object;
+        if (o == null) {
+            throw new IllegalStateException("lease is closed");
+        }
+        return o;
+    }
+
+    /**
+     * Checks the object back in. Closing again is a no-op until the lease is reused.
+     */
+    @Override
+    public void close() {
+        T o = object;
+        if (o == null) {
+            return;
+        }
+        PooledObject<T> p = pool;
+        object = null;
+        pool = null;
+        try {
+            p.checkIn(o);
+        } finally {
+            Cache cache = CACHE.get();
+            if (cache.size < CACHE_SIZE) {
+                next = cache.head;
+                cache.head = this;
+                cache.size++;
+            }
+        }
+    }
+}
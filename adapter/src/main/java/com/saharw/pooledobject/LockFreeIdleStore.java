@@ -0,0 +1,164 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free LIFO {@link IdleStore} (Treiber stack). Borrow and return are a single CAS on the
+ * head when uncontended, and a thread never blocks on another one.
+ * Nodes are never pushed again once popped, so there is no ABA hazard.
+ * <p>
+ * {@link #evict} allocates nothing and leaves the stack in place: it reads its way to the bottom,
+ * claims the oldest nodes one at a time with a CAS on their state, and only unlinks the expired
+ * tail. A borrower popping a claimed node skips it, survivors are handed back where they were.
+ * While no evict() runs, a borrower only reads the state of what it pops.
+ */
+final class LockFreeIdleStore<T> implements IdleStore<T> {
+
+    private static final int IDLE = 0;
+    private static final int TAKEN = 1;    // popped by a borrower
+    private static final int CLAIMED = 2;  // owned by an evict() running its filter
+    private static final int SKIPPED = 3;  // claimed, and popped meanwhile: off the stack
+    private static final int DEAD = 4;     // expired by an evict(), still linked
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Node> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "state");
+
+    private static final class Node<T> {
+        T item;
+        final long idleSince;
+        Node<T> next;
+        volatile int state;
+
+        Node(T item, long idleSince) {
+            this.item = item;
+            this.idleSince = idleSince;
+        }
+    }
+
+    private final AtomicReference<Node<T>> head = new AtomicReference<>();
+    private final AtomicInteger size;
+    // evict() calls running; while there are none, popped nodes need no CAS
+    private final AtomicInteger evictors = new AtomicInteger();
+
+    LockFreeIdleStore() {
+        this(new AtomicInteger());
+    }
+
+    /**
+     * @param size idle counter, may be shared with other stores (see {@link StripedIdleStore})
+     */
+    LockFreeIdleStore(AtomicInteger size) {
+        this.size = size;
+    }
+
+    @Override
+    public boolean offer(T o, long idleSince) {
+        Node<T> node = new Node<>(o, idleSince);
+        Node<T> h;
+        do {
+            h = head.get();
+            node.next = h;
+        } while (!head.compareAndSet(h, node));
+        size.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public T poll(Filter<T> filter) {
+        for (;;) {
+            Node<T> h = head.get();
+            if (h == null) {
+                return null;
+            }
+            if (head.compareAndSet(h, h.next) && take(h)) {
+                size.decrementAndGet();
+                if (filter.accept(h.item, h.idleSince)) {
+                    return h.item;
+                }
+            }
+        }
+    }
+
+    // whether a node just popped is the borrower's, rather than claimed or expired by an evict()
+    @SuppressWarnings("unchecked")
+    private boolean take(Node<T> node) {
+        if (evictors.get() == 0) {
+            // an evict() starting now reads the head after our pop and cannot reach the node;
+            // one that is done left it idle or dead
+            return node.state != DEAD;
+        }
+        if (STATE.compareAndSet(node, IDLE, TAKEN)) {
+            return true;
+        }
+        // tell the evict() holding it that the node is off the stack
+        STATE.compareAndSet(node, CLAIMED, SKIPPED);
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int evict(Filter<T> filter, int max) {
+        if (max <= 0) {
+            return 0;
+        }
+        evictors.incrementAndGet();
+        try {
+            // one read-only pass to the bottom, trailing the oldest max idle nodes
+            Node<T> first = head.get();
+            Node<T> above = null;
+            Node<T> oldest = null;
+            int behind = 0;
+            for (Node<T> x = first; x != null; x = x.next) {
+                if (x.state != IDLE) {
+                    continue;
+                }
+                if (oldest == null) {
+                    oldest = x;
+                } else if (++behind == max) {
+                    above = oldest;
+                    do {
+                        oldest = oldest.next;
+                    } while (oldest.state != IDLE && oldest != x);
+                    behind--;
+                }
+            }
+            int visited = 0;
+            Node<T> live = above;
+            for (Node<T> x = oldest; x != null; x = x.next) {
+                if (visited < max && STATE.compareAndSet(x, IDLE, CLAIMED)) {
+                    size.decrementAndGet();
+                    visited++;
+                    if (!filter.accept(x.item, x.idleSince)) {
+                        x.item = null;
+                        x.state = DEAD;
+                    } else if (STATE.compareAndSet(x, CLAIMED, IDLE)) {
+                        size.incrementAndGet();
+                    } else {
+                        // popped and skipped while the filter ran, it goes back on top
+                        offer(x.item, x.idleSince);
+                    }
+                }
+                if (x.state != DEAD) {
+                    live = x;
+                }
+            }
+            // unlink the dead tail; a borrower that read the old link pops dead nodes and skips them
+            if (live != null) {
+                live.next = null;
+            } else {
+                head.compareAndSet(first, null);
+            }
+            return visited;
+        } finally {
+            evictors.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+}
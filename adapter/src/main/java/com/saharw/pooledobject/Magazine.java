@@ -0,0 +1,124 @@
+package com.saharw.pooledobject;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Per-thread stack of idle objects that sits in front of the shared {@link IdleStore}.
+ * Only ever touched by its owning thread, so it needs no synchronization.
+ * It is also the {@link IdleStore.Filter} used to refill itself from the shared store.
+ * Once its thread has died the pool takes its objects back with {@link #reclaim()}.
+ */
+final class Magazine<T> implements IdleStore.Filter<T> {
+
+    private final PooledObject<T> pool;
+    // weak, a magazine registered with its pool must not keep a dead thread reachable
+    private final WeakReference<Thread> owner;
+    private final Object[] items;
+    private final long[] stamps;
+    private int count;
+
+    Magazine(PooledObject<T> pool, int capacity) {
+        this.pool = pool;
+        this.owner = new WeakReference<>(Thread.currentThread());
+        this.items = new Object[capacity];
+        this.stamps = new long[capacity];
+    }
+
+    int capacity() {
+        return items.length;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    boolean isFull() {
+        return count == items.length;
+    }
+
+    /**
+     * @return true once the owning thread has terminated; its last writes are then visible
+     */
+    boolean isOwnerDead() {
+        Thread thread = owner.get();
+        return thread == null || !thread.isAlive();
+    }
+
+    void push(T o, long idleSince) {
+        items[count] = o;
+        stamps[count] = idleSince;
+        count++;
+    }
+
+    /**
+     * Pops objects until one is accepted by the filter.
+     */
+    @SuppressWarnings("unchecked")
+    T pop(IdleStore.Filter<T> filter) {
+        while (count > 0) {
+            count--;
+            T o = (T) items[count];
+            items[count] = null;
+            if (filter.accept(o, stamps[count])) {
+                return o;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves the {@code n} oldest objects (bottom of the stack) to the shared pool.
+     */
+    @SuppressWarnings("unchecked")
+    void spill(int n) {
+        n = Math.min(n, count);
+        for (int i = 0; i < n; i++) {
+            pool.offerIdle((T) items[i], stamps[i]);
+        }
+        System.arraycopy(items, n, items, 0, count - n);
+        System.arraycopy(stamps, n, stamps, 0, count - n);
+        for (int i = count - n; i < count; i++) {
+            items[i] = null;
+        }
+        count -= n;
+    }
+
+    /**
+     * Gives every object back to the pool, expiring the stale ones. Only called once the owner
+     * is dead, by the single thread that unregistered this magazine.
+     */
+    @SuppressWarnings("unchecked")
+    void reclaim() {
+        for (int i = 0; i < count; i++) {
+            T o = (T) items[i];
+            items[i] = null;
+            if (pool.isExpired(stamps[i])) {
+                pool.discard(o);
+            } else {
+                pool.giveBack(o, stamps[i]);
+            }
+        }
+        count = 0;
+    }
+
+    /**
+     * Takes up to {@code n} fresh objects from the shared store.
+     */
+    void refill(IdleStore<T> shared, int n) {
+        for (int i = 0; i < n && !isFull(); i++) {
+            if (shared.poll(this) == null) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean accept(T o, long idleSince) {
+        if (pool.isExpired(idleSince)) {
+            pool.discard(o);
+            return false;
+        }
+        push(o, idleSince);
+        return true;
+    }
+}
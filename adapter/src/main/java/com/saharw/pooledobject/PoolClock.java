@@ -0,0 +1,84 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time source of a {@link PooledObject}, in milliseconds. Used for idle timestamps and expiry,
+ * which only need coarse precision.
+ */
+public abstract class PoolClock {
+
+    private static final PoolClock SYSTEM = new PoolClock() {
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    public abstract long millis();
+
+    /**
+     * {@link System#currentTimeMillis()}, the default.
+     */
+    public static PoolClock system() {
+        return SYSTEM;
+    }
+
+    /**
+     * Clock that reads a volatile field refreshed every {@code tickMillis} by the shared pool
+     * scheduler thread, so pools never call into the OS clock on their hot path.
+     * Readings lag real time by up to one tick (more if the scheduler thread is busy).
+     * Meant to be created once and shared between pools.
+     */
+    public static PoolClock coarse(long tickMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tick must be >= 1ms, was " + tickMillis);
+        }
+        final Coarse clock = new Coarse();
+        PoolScheduler.get().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                clock.now = System.currentTimeMillis();
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        return clock;
+    }
+
+    private static final class Coarse extends PoolClock {
+        volatile long now = System.currentTimeMillis();
+
+        @Override
+        public long millis() {
+            return now;
+        }
+    }
+
+    /**
+     * Clock that only moves when told to, for deterministic tests and benchmarks of expiry.
+     */
+    public static final class Manual extends PoolClock {
+        private final AtomicLong now;
+
+        public Manual() {
+            this(0L);
+        }
+
+        public Manual(long startMillis) {
+            now = new AtomicLong(startMillis);
+        }
+
+        @Override
+        public long millis() {
+            return now.get();
+        }
+
+        public void set(long millis) {
+            now.set(millis);
+        }
+
+        public void advance(long millis) {
+            now.addAndGet(millis);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Result of {@link PooledObject#checkOutAsync()}. Besides the blocking {@link Future} methods,
+ * listeners can be attached; they run on whichever thread completes the future (the caller on
+ * a hit, a creator thread, or the thread whose checkIn served it).
+ * An object that arrives after the future was cancelled goes back to the pool.
+ */
+public final class PoolFuture<T> implements Future<T> {
+
+    public interface Listener<T> {
+        /**
+         * @param value   the borrowed object, null if the checkOut failed or was cancelled
+         * @param failure null on success
+         */
+        void onComplete(T value, Throwable failure);
+    }
+
+    private static final class Failure {
+        final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private static final Failure CANCELLED = new Failure(new CancellationException());
+    // claimed by deliver(), which cannot be cancelled anymore but is not complete yet
+    private static final Object DELIVERING = new Object();
+
+    // listeners registered before completion, newest first; DONE once they have been run
+    private static final class ListenerNode<T> {
+        final Listener<T> listener;
+        final ListenerNode<T> next;
+
+        ListenerNode(Listener<T> listener, ListenerNode<T> next) {
+            this.listener = listener;
+            this.next = next;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final ListenerNode DONE = new ListenerNode<>(null, null);
+
+    private final PooledObject<T> pool;
+    private final long start = System.nanoTime();
+    private final AtomicReference<Object> result = new AtomicReference<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicReference<ListenerNode<T>> listeners = new AtomicReference<>();
+
+    PoolFuture(PooledObject<T> pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Registers a listener, run right away if the future is already done.
+     */
+    public void addListener(Listener<T> listener) {
+        for (;;) {
+            ListenerNode<T> head = listeners.get();
+            if (head == DONE) {
+                runListener(listener, result.get());
+                return;
+            }
+            if (listeners.compareAndSet(head, new ListenerNode<>(listener, head))) {
+                return;
+            }
+        }
+    }
+
+    // hands the object to the future, or back to the pool if nobody wants it anymore; only a
+    // delivered object counts as borrowed, one that was never received skips the checkIn hooks
+    boolean deliver(T o, boolean hit) {
+        if (!result.compareAndSet(null, DELIVERING)) {
+            pool.giveBack(o, pool.getClock().millis());
+            return false;
+        }
+        complete(pool.delivered(o, start, hit));
+        return true;
+    }
+
+    void fail(Throwable t) {
+        set(new Failure(t));
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return set(CANCELLED);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return result.get() == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        Object r = result.get();
+        return r != null && r != DELIVERING;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report(result.get());
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report(result.get());
+    }
+
+    private boolean set(Object r) {
+        if (!result.compareAndSet(null, r)) {
+            return false;
+        }
+        complete(r);
+        return true;
+    }
+
+    private void complete(Object r) {
+        result.set(r);
+        done.countDown();
+        @SuppressWarnings("unchecked")
+        ListenerNode<T> head = listeners.getAndSet(DONE);
+        runListeners(head, r);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T report(Object r) throws ExecutionException {
+        if (r == CANCELLED) {
+            throw new CancellationException();
+        }
+        if (r instanceof Failure) {
+            throw new ExecutionException(((Failure) r).cause);
+        }
+        return (T) r;
+    }
+
+    // runs the listeners in registration order
+    private void runListeners(ListenerNode<T> node, Object r) {
+        if (node != null) {
+            runListeners(node.next, r);
+            runListener(node.listener, r);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runListener(Listener<T> listener, Object r) {
+        if (r instanceof Failure) {
+            listener.onComplete(null, ((Failure) r).cause);
+        } else {
+            listener.onComplete((T) r, null);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.saharw.pooledobject;
+
+/**
+ * Observes the life cycle of the objects of a pool, set with
+ * {@link PooledObject#setListener(PoolListener)}, e.g. to emit profiler events. Called inline on
+ * the thread doing the operation, with no lock held, so implementations must be thread-safe and
+ * cheap; an exception thrown is propagated to the caller of the operation.
+ */
+public interface PoolListener<T> {
+
+    /**
+     * A checkOut handed out {@code o}: blocking, batch (once per object) or async (when the
+     * future completes, on the completing thread).
+     *
+     * @param waitNanos time the checkOut took, creation or waiting for a checkIn included; the
+     *                  whole batch for a batch, up to completion for an async checkOut
+     * @param hit       true if {@code o} was idle, false if it was created or waited for
+     */
+    void onCheckOut(T o, long waitNanos, boolean hit);
+
+    /**
+     * {@code o} is being checked in.
+     */
+    void onCheckIn(T o);
+
+    /**
+     * {@link PooledObject#create} returned {@code o} after {@code createNanos}.
+     */
+    void onCreate(T o, long createNanos);
+
+    /**
+     * {@code o} is about to be passed to {@link PooledObject#expire}.
+     */
+    void onExpire(T o);
+}
@@ -0,0 +1,102 @@
+package com.saharw.pooledobject;
+
+/**
+ * Counters and latency histograms of a {@link PooledObject}, enabled with
+ * {@link PooledObject#setMetricsEnabled(boolean)}. Counters are striped per thread and
+ * histograms record without allocating, so metrics can stay on under load; reads sum the
+ * stripes and are meant for periodic sampling (a monitoring agent, a JMX client).
+ * Counts start when metrics are enabled.
+ */
+public final class PoolMetrics {
+
+    private final PooledObject<?> pool;
+    final StripedCounter borrows = new StripedCounter();
+    final StripedCounter misses = new StripedCounter();
+    final StripedCounter creates = new StripedCounter();
+    final StripedCounter validationFailures = new StripedCounter();
+    final StripedCounter expirations = new StripedCounter();
+    final LatencyHistogram checkOutWait = new LatencyHistogram();
+    final LatencyHistogram createTime = new LatencyHistogram();
+
+    PoolMetrics(PooledObject<?> pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return objects handed out, by any checkOut flavour
+     */
+    public long getBorrows() {
+        return borrows.sum();
+    }
+
+    /**
+     * @return borrows served by an idle object
+     */
+    public long getHits() {
+        return Math.max(0L, getBorrows() - getMisses());
+    }
+
+    /**
+     * @return borrows that found nothing idle and created an object or waited for one
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return successful {@link PooledObject#create} calls
+     */
+    public long getCreates() {
+        return creates.sum();
+    }
+
+    /**
+     * @return {@link PooledObject#validate} calls that returned false
+     */
+    public long getValidationFailures() {
+        return validationFailures.sum();
+    }
+
+    /**
+     * @return {@link PooledObject#expire} calls, for age, failed validation or pool limits
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return idle objects in the shared store
+     */
+    public int getIdleCount() {
+        return pool.getIdleCount();
+    }
+
+    /**
+     * @return live objects not in the shared store: checked out, or idle in a thread cache
+     */
+    public int getActiveCount() {
+        return Math.max(0, pool.getSize() - pool.getIdleCount());
+    }
+
+    /**
+     * @return time spent in blocking checkOuts, hits included, creation and waiting for a
+     * checkIn included
+     */
+    public LatencyHistogram getCheckOutWaitTime() {
+        return checkOutWait;
+    }
+
+    /**
+     * @return time spent in successful {@link PooledObject#create} calls
+     */
+    public LatencyHistogram getCreateTime() {
+        return createTime;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMetrics{borrows=" + getBorrows() + ", misses=" + getMisses() + ", creates=" + getCreates()
+                + ", validationFailures=" + getValidationFailures() + ", expirations=" + getExpirations()
+                + ", idle=" + getIdleCount() + ", active=" + getActiveCount() + '}';
+    }
+}
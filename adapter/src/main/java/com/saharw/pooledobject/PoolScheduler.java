@@ -0,0 +1,66 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Daemon threads shared by all pools for their background work: a single scheduler thread
+ * (eviction, clock ticks) and a small executor that creates objects ahead of demand.
+ * Each is created on first use, so pools that never need them never start them.
+ */
+final class PoolScheduler {
+
+    private PoolScheduler() {
+    }
+
+    private static final class Holder {
+        static final ScheduledExecutorService INSTANCE = create();
+    }
+
+    private static final class CreatorsHolder {
+        static final Executor INSTANCE = createCreators();
+    }
+
+    static ScheduledExecutorService get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Default executor for {@link PooledObject#create} calls made off the borrowing thread,
+     * one thread per processor, idle threads time out.
+     */
+    static Executor creators() {
+        return CreatorsHolder.INSTANCE;
+    }
+
+    private static ScheduledExecutorService create() {
+        return new ScheduledThreadPoolExecutor(1, daemonThreads("PooledObject-scheduler"));
+    }
+
+    private static Executor createCreators() {
+        int n = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(n, n, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), daemonThreads("PooledObject-creator"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
@@ -1,74 +1,1274 @@
 package com.saharw.pooledobject;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Created by Sahar on 02/04/2017.
+ * <p>
+ * checkOut/checkIn are lock-free and the pool never holds a monitor: {@link #create},
+ * {@link #validate} and {@link #expire} always run outside any lock, and a checkOut waiting on
+ * a full pool parks with {@link LockSupport}, so a virtual thread unmounts instead of pinning
+ * its carrier.
  */
 
 public abstract class PooledObject<T> {
 
-    private T o;
+    private static final long LEAK_SCAN_MILLIS = 1000;
+
+    private volatile T o;
 
     public PooledObject(){
         expirationTime = 30000; // 30 seconds
-        locked = new Hashtable<>();
-        unlocked = new Hashtable<>();
+        idle = new LockFreeIdleStore<>();
     }
     public PooledObject(T o)
     {
-        expirationTime = 30000; // 30 seconds
-        locked = new Hashtable<>();
-        unlocked = new Hashtable<>();
+        this();
         this.o = o;
     }
 
-    private long expirationTime;
-    private Hashtable<T, Long> locked, unlocked;
+    private volatile long expirationTime;
+    private volatile PoolClock clock = PoolClock.system();
+    private volatile ValidationPolicy validation = ValidationPolicy.onBorrow();
+    private volatile IdleStore<T> idle;
+    private volatile int maxIdle = Integer.MAX_VALUE;
+    private volatile int threadCacheSize;
+    private boolean threadCacheUsed;
+    private final ThreadLocal<Magazine<T>> magazines = new ThreadLocal<>();
+    // every thread's magazine, so the objects cached by a thread that died can be taken back
+    private final Queue<Magazine<T>> threadMagazines = new ConcurrentLinkedQueue<>();
+    private volatile int maxSize = Integer.MAX_VALUE;
+    // objects created and not yet expired, idle or checked out
+    private final AtomicInteger size = new AtomicInteger();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    // set while the background evictor owns idle expiry of the shared store
+    private volatile boolean evicting;
+    // set while the evictor has more expired objects than one batch, borrowers check age again
+    private volatile boolean evictBacklog;
+    private int evictExpired; // evictor thread only
+    private ScheduledFuture<?> evictor; // guarded by configLock
+    private final ReentrantLock configLock = new ReentrantLock();
+
+    // runs on the borrowing thread after the object left the idle store, no lock is held
+    private final IdleStore.Filter<T> borrowFilter = new IdleStore.Filter<T>() {
+        @Override
+        public boolean accept(T o, long idleSince) {
+            if (isExpired(idleSince)) {
+
+                // object has expired
+                return recycle(o);
+            }
+            return !validation.validatesOnBorrow(clock, idleSince) || validateOrRecycle(o);
+        }
+    };
+
+    // borrow from the shared store while the evictor keeps up: whatever is left there is fresh
+    private final IdleStore.Filter<T> freshFilter = new IdleStore.Filter<T>() {
+        @Override
+        public boolean accept(T o, long idleSince) {
+            return !validation.validatesOnBorrow(clock, idleSince) || validateOrRecycle(o);
+        }
+    };
+
+    private final IdleStore.Filter<T> evictFilter = new IdleStore.Filter<T>() {
+        @Override
+        public boolean accept(T o, long idleSince) {
+            if (isExpired(idleSince)) {
+                evictExpired++;
+                discard(o);
+                return false;
+            }
+            return !validation.validatesWhileIdle() || validateOrRecycle(o);
+        }
+    };
+
+    private final Runnable evictTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                reclaimMagazines();
+                evictExpired = 0;
+                int visited = idle.evict(evictFilter, evictBatchSize);
+                // a full batch of expired objects: there may be more, until a run clears them
+                evictBacklog = visited == evictBatchSize && evictExpired == visited;
+            } catch (RuntimeException e) {
+                // keep the evictor scheduled, an expire() failure must not stop it
+            }
+        }
+    };
+    private volatile int evictBatchSize;
+    private volatile Executor creatorExecutor;
+    private volatile int minIdle;
+    // background creations submitted and not finished yet
+    private final AtomicInteger pendingCreates = new AtomicInteger();
+    private volatile LeakDetector<T> leaks;
+    private ScheduledFuture<?> leakScanner; // guarded by configLock
+    private volatile AdaptiveSizer sizing;
+    private ScheduledFuture<?> sizingTask; // guarded by configLock
+    private volatile PoolMetrics metrics;
+    private volatile PoolListener<T> listener;
+
+    // creates an idle object for a slot reserved by topUpIfNeeded()
+    private final Runnable topUpTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                giveBack(createReserved(), clock.millis());
+            } catch (RuntimeException e) {
+                // create() failed, the next checkOut will try again
+            } finally {
+                pendingCreates.decrementAndGet();
+            }
+        }
+    };
+
     public abstract T create(T o);
     public abstract boolean validate(T o);
     public abstract void expire(T o);
-    public synchronized T checkOut()
+
+    /**
+     * Restores an expired or invalid instance to the state {@link #create} would give a new one,
+     * so the pool can hand it out again instead of allocating. Called right after
+     * {@link #expire}, on an object nobody else holds. The generated pools copy the prototype
+     * field by field.
+     *
+     * @return false if the instance cannot be reused (the default), it is then discarded
+     */
+    public boolean reset(T target) {
+        return false;
+    }
+
+    /**
+     * Instance passed to {@link #create} and copied by {@link #reset}.
+     */
+    public void setPrototype(T prototype) {
+        this.o = prototype;
+    }
+
+    public T getPrototype() {
+        return o;
+    }
+    public T checkOut()
     {
-        long now = System.currentTimeMillis();
-        T o;
-        if( unlocked.size() > 0 )
-        {
-            Enumeration<T> e = unlocked.keys();
-            while(e.hasMoreElements())
-            {
-                o = e.nextElement();
-                if((now - ((Long)unlocked.get(o)).longValue()) > expirationTime) {
-
-                    // object has expired
-                    unlocked.remove(o);
-                    expire(o);
-                    o = null;
-                }
-                else {
-                    if(validate(o)) {
-                        unlocked.remove(o);
-                        locked.put(o, new Long(now));
-                        return(o);
+        PoolMetrics metrics = this.metrics;
+        PoolListener<T> listener = this.listener;
+        if (metrics == null && listener == null) {
+            return lent(borrow());
+        }
+        long start = System.nanoTime();
+        T o = pollIdle();
+        boolean hit = o != null;
+        if (!hit) {
+            o = acquireUninterruptibly();
+        }
+        checkedOut(o, System.nanoTime() - start, hit, metrics, listener);
+        return lent(o);
+    }
+
+    private T borrow() {
+        T o = pollIdle();
+        if (o != null) {
+            return o;
+        }
+        return acquireUninterruptibly();
+    }
+
+    private T acquireUninterruptibly() {
+        try {
+            return acquire(false, 0L, false);
+        } catch (InterruptedException e) {
+            // not interruptible
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Like {@link #checkOut()}, but when the pool is at its maximum size waits at most
+     * {@code timeout} for an object to be checked in.
+     *
+     * @return the object, or null if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public T checkOut(long timeout, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        PoolMetrics metrics = this.metrics;
+        PoolListener<T> listener = this.listener;
+        long start = metrics != null || listener != null ? System.nanoTime() : 0L;
+        T o = pollIdle();
+        boolean hit = o != null;
+        if (!hit) {
+            o = acquire(true, unit.toNanos(timeout), true);
+        }
+        if (o != null && (metrics != null || listener != null)) {
+            checkedOut(o, System.nanoTime() - start, hit, metrics, listener);
+        }
+        return lent(o);
+    }
+
+    private void checkedOut(T o, long waitNanos, boolean hit, PoolMetrics metrics, PoolListener<T> listener) {
+        if (metrics != null) {
+            metrics.checkOutWait.record(waitNanos);
+        }
+        if (listener != null) {
+            listener.onCheckOut(o, waitNanos, hit);
+        }
+    }
+
+    /**
+     * Non-blocking checkOut. On a hit the future is already complete when returned.
+     * On a miss the object is created on the creator executor, and when the pool is at its
+     * max size the future joins the waiter queue and is completed by a later checkIn.
+     */
+    public PoolFuture<T> checkOutAsync() {
+        PoolFuture<T> future = new PoolFuture<>(this);
+        acquireAsync(future);
+        return future;
+    }
+
+    /**
+     * {@link #checkOut()} wrapped in a {@link Lease} that checks the object back in when closed.
+     */
+    public Lease<T> lease() {
+        return Lease.of(this, checkOut());
+    }
+
+    public void checkIn(T o) {
+        PoolListener<T> listener = this.listener;
+        if (listener != null) {
+            listener.onCheckIn(o);
+        }
+        LeakDetector<T> leaks = this.leaks;
+        if (leaks != null) {
+            leaks.returned(o);
+        }
+        if (validation.validatesOnReturn() && !validateOrRecycle(o)) {
+            return;
+        }
+        // the oldest waiter gets the object first
+        if (!waiters.isEmpty() && handOff(o)) {
+            return;
+        }
+        Magazine<T> magazine = magazine();
+        if (magazine != null) {
+            if (magazine.isFull()) {
+                magazine.spill(batchSize(magazine));
+            }
+            magazine.push(o, clock.millis());
+        } else if (this.idle.size() >= maxIdle) {
+            // not kept, no need for a timestamp
+            discard(o);
+        } else {
+            offerIdle(o, clock.millis());
+        }
+    }
+
+    /**
+     * Borrows {@code n} objects at once into {@code out}. Idle objects are taken first, then the
+     * missing ones are reserved with a single update of the pool size and created in parallel on
+     * the creator executor (the caller creating one of them). If the max size does not leave room
+     * for all of them, blocks like {@link #checkOut()} for the rest.
+     * <p>
+     * Callers holding part of a batch while waiting for the rest can starve each other on a
+     * bounded pool; keep batches well below the max size.
+     *
+     * @throws RuntimeException the first exception thrown by {@link #create}; objects already
+     *                          borrowed for the batch are checked back in and none are added
+     */
+    public void checkOut(int n, Collection<? super T> out) {
+        if (n < 0) {
+            throw new IllegalArgumentException("batch size must be >= 0, was " + n);
+        }
+        PoolListener<T> listener = this.listener;
+        long start = listener != null ? System.nanoTime() : 0L;
+        List<T> batch = new ArrayList<>(n);
+        int hits;
+        try {
+            T o;
+            while (batch.size() < n && (o = pollIdle()) != null) {
+                batch.add(o);
+            }
+            hits = batch.size();
+            int reserved = reserve(n - batch.size());
+            if (reserved > 0) {
+                createReserved(reserved, batch);
+                missed(reserved);
+            }
+            // misses past the reserved ones are counted by acquire()
+            while (batch.size() < n) {
+                batch.add(borrow());
+            }
+        } catch (RuntimeException e) {
+            checkIn(batch);
+            throw e;
+        }
+        long waitNanos = listener != null ? System.nanoTime() - start : 0L;
+        for (int i = 0; i < batch.size(); i++) {
+            T o = batch.get(i);
+            if (listener != null) {
+                listener.onCheckOut(o, waitNanos, i < hits);
+            }
+            lent(o);
+        }
+        out.addAll(batch);
+    }
+
+    /**
+     * Returns a batch of objects. Waiters are served first, the rest go idle with a single
+     * timestamp.
+     */
+    public void checkIn(Collection<? extends T> objects) {
+        long now = clock.millis();
+        Magazine<T> magazine = magazine();
+        LeakDetector<T> leaks = this.leaks;
+        PoolListener<T> listener = this.listener;
+        boolean validate = validation.validatesOnReturn();
+        for (T o : objects) {
+            if (listener != null) {
+                listener.onCheckIn(o);
+            }
+            if (leaks != null) {
+                leaks.returned(o);
+            }
+            if (validate && !validateOrRecycle(o)) {
+                continue;
+            }
+            if (!waiters.isEmpty() && handOff(o)) {
+                continue;
+            }
+            if (magazine != null) {
+                if (magazine.isFull()) {
+                    magazine.spill(batchSize(magazine));
+                }
+                magazine.push(o, now);
+            } else {
+                offerIdle(o, now);
+            }
+        }
+    }
+
+    /**
+     * Bounds the number of objects the pool keeps alive (idle and checked out).
+     * Once reached, {@link #checkOut()} blocks until an object is checked in or expires,
+     * waiters being served in arrival order.
+     *
+     * @throws IllegalStateException if a thread cache is enabled, see {@link #setThreadCacheSize(int)}
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("max size must be >= 1, was " + maxSize);
+        }
+        configLock.lock();
+        try {
+            if (maxSize != Integer.MAX_VALUE && threadCacheSize > 0) {
+                throw new IllegalStateException("a bounded pool cannot have a thread cache");
+            }
+            this.maxSize = maxSize;
+        } finally {
+            configLock.unlock();
+        }
+        // a larger bound may let waiters create right away
+        while (!waiters.isEmpty() && reserve()) {
+            if (!handOff(Waiter.PERMIT)) {
+                size.decrementAndGet();
+                break;
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of live objects, idle or checked out
+     */
+    public int getSize() {
+        return Math.max(0, size.get());
+    }
+
+    /**
+     * Executor running the {@link #create} calls made off the borrowing thread (pre-warming and
+     * idle top-up). Defaults to a shared pool of daemon threads, one per processor.
+     */
+    public void setCreatorExecutor(Executor executor) {
+        creatorExecutor = executor;
+    }
+
+    public Executor getCreatorExecutor() {
+        Executor executor = creatorExecutor;
+        return executor != null ? executor : PoolScheduler.creators();
+    }
+
+    /**
+     * Creates {@code n} objects in parallel on the creator executor and parks them idle,
+     * so the first borrowers do not pay for {@link #create}. Blocks until all are done.
+     *
+     * @return number of objects actually added (fewer if the max size was reached)
+     * @throws RuntimeException the first exception thrown by {@link #create}, once all are done
+     */
+    public int prewarm(int n) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(n);
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (createIdle()) {
+                        created.incrementAndGet();
                     }
-                    else {
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        Executor executor = getCreatorExecutor();
+        for (int i = 0; i < n; i++) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return created.get();
+    }
+
+    /**
+     * Keeps at least {@code minIdle} objects idle in the shared store: whenever a borrow or an
+     * expiry drops below it, the missing objects are created in the background on the
+     * creator executor (within the max size).
+     */
+    public void setMinIdle(int minIdle) {
+        if (minIdle < 0) {
+            throw new IllegalArgumentException("min idle must be >= 0, was " + minIdle);
+        }
+        this.minIdle = minIdle;
+        topUpIfNeeded();
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * Idle time after which an object is expired instead of handed out, 30 seconds by default.
+     */
+    public void setExpirationTime(long expirationTime) {
+        if (expirationTime < 0) {
+            throw new IllegalArgumentException("expiration time must be >= 0, was " + expirationTime);
+        }
+        this.expirationTime = expirationTime;
+    }
+
+    public long getExpirationTime() {
+        return expirationTime;
+    }
+
+    /**
+     * Time source for idle timestamps and expiry, {@link PoolClock#system()} by default.
+     * {@link PoolClock#coarse(long)} takes the clock call off the hot path,
+     * {@link PoolClock.Manual} makes expiry testable without sleeping.
+     */
+    public void setClock(PoolClock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock must not be null");
+        }
+        this.clock = clock;
+    }
+
+    public PoolClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Decides when {@link #validate} runs, {@link ValidationPolicy#onBorrow()} by default.
+     * Expensive validators can run on return, in the background while idle, or only for
+     * objects idle longer than some time instead of on every checkOut.
+     */
+    public void setValidationPolicy(ValidationPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("validation policy must not be null");
+        }
+        validation = policy;
+    }
+
+    public ValidationPolicy getValidationPolicy() {
+        return validation;
+    }
+
+    /**
+     * Moves idle expiry off the borrow path: every {@code periodMillis} a background thread
+     * expires up to {@code batchSize} of the oldest idle objects, and checkOut stops checking
+     * the age of what it takes from the shared store. An object may then stay idle up to one
+     * period past the expiration time. While a run finds a whole batch expired, checkOut checks
+     * ages again until a run clears the backlog. Thread caches keep checking ages inline.
+     *
+     * @param periodMillis run period, 0 stops the evictor and restores inline expiry
+     */
+    public void setEvictionPolicy(long periodMillis, int batchSize) {
+        if (periodMillis < 0 || batchSize < 1) {
+            throw new IllegalArgumentException("invalid eviction policy: period " + periodMillis
+                    + "ms, batch size " + batchSize);
+        }
+        configLock.lock();
+        try {
+            if (evictor != null) {
+                evictor.cancel(false);
+                evictor = null;
+            }
+            evictBatchSize = batchSize;
+            evicting = periodMillis > 0;
+            // nothing is known about the store yet, the first run decides
+            evictBacklog = evicting;
+            if (evicting) {
+                evictor = PoolScheduler.get().scheduleWithFixedDelay(evictTask, periodMillis, periodMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            configLock.unlock();
+        }
+    }
+
+    /**
+     * Samples one checkOut in {@code sampleRate} and records its call site; {@code listener} is
+     * told about sampled objects still checked out after {@code holdTimeMillis}, and about those
+     * garbage collected without a checkIn, whose slot then goes back to the pool.
+     * Unsampled borrows cost a thread-local countdown, checkIn an identity lookup while anything
+     * is tracked, so it can stay on in production.
+     *
+     * @param sampleRate     1 tracks every checkOut, 0 turns detection off
+     * @param holdTimeMillis hold time reported as a leak, 0 to only report unreachable objects
+     */
+    public void setLeakDetection(int sampleRate, long holdTimeMillis, LeakListener listener) {
+        if (sampleRate < 0 || holdTimeMillis < 0) {
+            throw new IllegalArgumentException("invalid leak detection: sample rate " + sampleRate
+                    + ", hold time " + holdTimeMillis + "ms");
+        }
+        if (sampleRate > 0 && listener == null) {
+            throw new IllegalArgumentException("leak listener must not be null");
+        }
+        configLock.lock();
+        try {
+            if (leakScanner != null) {
+                leakScanner.cancel(false);
+                leakScanner = null;
+            }
+            if (sampleRate == 0) {
+                leaks = null;
+                return;
+            }
+            LeakDetector<T> detector = new LeakDetector<>(this, sampleRate, holdTimeMillis, listener);
+            leaks = detector;
+            leakScanner = PoolScheduler.get().scheduleWithFixedDelay(detector.scanTask, LEAK_SCAN_MILLIS,
+                    LEAK_SCAN_MILLIS, TimeUnit.MILLISECONDS);
+        } finally {
+            configLock.unlock();
+        }
+    }
+
+    /**
+     * Lets the pool follow its load: every {@code periodMillis} a controller on the shared
+     * scheduler thread compares borrows, misses (nothing idle) and waits (pool full) with the
+     * previous period and moves the max size between {@code minSize} and {@code maxSize}, and
+     * the max idle between the min idle and the max size. Sustained waits grow the max size,
+     * frequent misses grow the max idle; when demand drops, surplus idle objects are expired
+     * right away instead of waiting for the expiration time, and the max size shrinks back.
+     *
+     * @param periodMillis controller period, 0 stops it and leaves the current sizes in place
+     * @throws IllegalStateException if a thread cache is enabled
+     */
+    public void setAdaptiveSizing(int minSize, int maxSize, long periodMillis) {
+        if (periodMillis < 0 || minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("invalid adaptive sizing: size " + minSize + ".." + maxSize
+                    + ", period " + periodMillis + "ms");
+        }
+        configLock.lock();
+        try {
+            if (sizingTask != null) {
+                sizingTask.cancel(false);
+                sizingTask = null;
+            }
+            if (periodMillis == 0) {
+                sizing = null;
+                return;
+            }
+            setMaxSize(Math.min(Math.max(this.maxSize, minSize), maxSize));
+            AdaptiveSizer sizer = new AdaptiveSizer(this, minSize, maxSize, periodMillis);
+            sizing = sizer;
+            sizingTask = PoolScheduler.get().scheduleWithFixedDelay(sizer.adjustTask, periodMillis, periodMillis,
+                    TimeUnit.MILLISECONDS);
+        } finally {
+            configLock.unlock();
+        }
+    }
 
-                        // object failed validation
-                        unlocked.remove(o);
-                        expire(o);
-                        o = null;
+    /**
+     * Turns on the counters and latency histograms returned by {@link #getMetrics()}; enabling
+     * again starts from zero. Off by default: each borrow then costs a few uncontended counter
+     * updates and two {@link System#nanoTime()} calls.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        metrics = enabled ? new PoolMetrics(this) : null;
+    }
+
+    /**
+     * @return the live metrics of this pool, null unless enabled
+     */
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Installs a listener told about every checkOut (blocking, batch or async), checkIn,
+     * creation and expiry, null (the default) to remove it. Without a listener the hooks cost a
+     * volatile read.
+     */
+    public void setListener(PoolListener<T> listener) {
+        this.listener = listener;
+    }
+
+    public PoolListener<T> getListener() {
+        return listener;
+    }
+
+    /**
+     * Replaces the store that holds the idle objects (see {@link IdleStores}).
+     * Objects idle in the old store are moved over; meant to be called before the pool takes traffic.
+     */
+    public void setIdleStore(IdleStore<T> store) {
+        if (store == null) {
+            throw new IllegalArgumentException("idle store must not be null");
+        }
+        IdleStore<T> old = idle;
+        idle = store;
+        old.poll(new IdleStore.Filter<T>() {
+            @Override
+            public boolean accept(T o, long idleSince) {
+                offerIdle(o, idleSince);
+                return false;
+            }
+        });
+    }
+
+    public IdleStore<T> getIdleStore() {
+        return idle;
+    }
+
+    /**
+     * Switches to striped mode: {@code stripes} lock-free sub-pools, each thread borrowing from
+     * its home stripe and stealing from the neighbouring ones before falling back to {@link #create}.
+     *
+     * @param stripes number of sub-pools, 1 switches back to a single shared stack
+     */
+    public void setStripes(int stripes) {
+        setIdleStore(stripes > 1 ? IdleStores.<T>striped(stripes) : IdleStores.<T>lifo());
+    }
+
+    /**
+     * Caps the number of idle objects in the shared store, whatever stripe they sit in
+     * (thread caches are not counted).
+     * Objects checked in beyond the cap are expired.
+     */
+    public void setMaxIdle(int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("max idle must be >= 0, was " + maxIdle);
+        }
+        this.maxIdle = maxIdle;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * @return approximate number of idle objects in the shared store (thread caches not included)
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Enables a per-thread cache of up to {@code size} idle objects in front of the shared pool.
+     * A thread that checks in what it checked out never touches shared state; a full or empty
+     * cache spills to or refills from the shared pool half a cache at a time.
+     * Objects cached by a thread are only handed out to that thread; once it dies they are taken
+     * back by the evictor or a trim.
+     * <p>
+     * Only for pools without a max size: a live thread's cache cannot be drained by another
+     * thread, so a full pool could leave waiters parked while the objects they need sit idle in
+     * the cache of a thread that is not borrowing anymore.
+     *
+     * @param size cache capacity per thread, 0 disables the cache
+     * @throws IllegalStateException if {@code size} is positive and the pool has a max size
+     */
+    public void setThreadCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("thread cache size must be >= 0, was " + size);
+        }
+        configLock.lock();
+        try {
+            if (size > 0 && maxSize != Integer.MAX_VALUE) {
+                throw new IllegalStateException("a bounded pool cannot have a thread cache");
+            }
+            if (size > 0) {
+                threadCacheUsed = true;
+            }
+            threadCacheSize = size;
+        } finally {
+            configLock.unlock();
+        }
+    }
+
+    public int getThreadCacheSize() {
+        return threadCacheSize;
+    }
+
+    boolean isExpired(long idleSince) {
+        return (clock.millis() - idleSince) > expirationTime;
+    }
+
+    void discard(T o) {
+        try {
+            expiring(o);
+            expire(o);
+        } finally {
+            release();
+            if (minIdle > 0) {
+                topUpIfNeeded();
+            }
+        }
+    }
+
+    private void expiring(T o) {
+        PoolMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.expirations.increment();
+        }
+        PoolListener<T> listener = this.listener;
+        if (listener != null) {
+            listener.onExpire(o);
+        }
+    }
+
+    // a tracked object was garbage collected while checked out
+    void leaked() {
+        release();
+        if (minIdle > 0) {
+            topUpIfNeeded();
+        }
+    }
+
+    // hands the object of an async checkOut started at start (System.nanoTime()) to its future
+    T delivered(T o, long start, boolean hit) {
+        PoolListener<T> listener = this.listener;
+        if (listener != null) {
+            listener.onCheckOut(o, System.nanoTime() - start, hit);
+        }
+        return lent(o);
+    }
+
+    // hands an object to the caller, sampling it for leak detection
+    T lent(T o) {
+        LeakDetector<T> leaks = this.leaks;
+        if (leaks != null && o != null) {
+            leaks.borrowed(o);
+        }
+        AdaptiveSizer sizing = this.sizing;
+        if (sizing != null && o != null) {
+            sizing.borrows.increment();
+        }
+        PoolMetrics metrics = this.metrics;
+        if (metrics != null && o != null) {
+            metrics.borrows.increment();
+        }
+        return o;
+    }
+
+    // expires up to n of the oldest idle objects, those idle for longer than idleMillis
+    int trimIdle(int n, final long idleMillis) {
+        reclaimMagazines();
+        final long now = clock.millis();
+        final int[] trimmed = new int[1];
+        idle.evict(new IdleStore.Filter<T>() {
+            @Override
+            public boolean accept(T o, long idleSince) {
+                if (now - idleSince < idleMillis) {
+                    return true;
+                }
+                trimmed[0]++;
+                discard(o);
+                return false;
+            }
+        }, n);
+        return trimmed[0];
+    }
+
+    private boolean validateOrRecycle(T o) {
+        if (!validate(o)) {
+
+            // object failed validation
+            PoolMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.validationFailures.increment();
+            }
+            return recycle(o);
+        }
+        return true;
+    }
+
+    // expires an object about to be borrowed or returned, then renews it in place if reset()
+    // supports it; otherwise it is discarded and false returned
+    private boolean recycle(T o) {
+        boolean renewed = false;
+        try {
+            expiring(o);
+            expire(o);
+            renewed = reset(o);
+        } finally {
+            if (!renewed) {
+                release();
+                if (minIdle > 0) {
+                    topUpIfNeeded();
+                }
+            }
+        }
+        return renewed;
+    }
+
+    // returns an idle object that never left the pool, to a waiter if any
+    void giveBack(T o, long idleSince) {
+        if (waiters.isEmpty() || !handOff(o)) {
+            offerIdle(o, idleSince);
+        }
+    }
+
+    void offerIdle(T o, long idleSince) {
+        IdleStore<T> idle = this.idle;
+        if (idle.size() >= maxIdle || !idle.offer(o, idleSince)) {
+            discard(o);
+        }
+    }
+
+    private T pollIdle() {
+        IdleStore<T> idle = this.idle;
+        if (minIdle > 0) {
+            topUpIfNeeded();
+        }
+        Magazine<T> magazine = magazine();
+        if (magazine == null) {
+            return idle.poll(evicting && !evictBacklog ? freshFilter : borrowFilter);
+        }
+        T o = magazine.pop(borrowFilter);
+        if (o == null) {
+            magazine.refill(idle, batchSize(magazine));
+            o = magazine.pop(borrowFilter);
+        }
+        return o;
+    }
+
+    // slow path of checkOut: nothing idle, create if below max size or wait for a checkIn
+    @SuppressWarnings("unchecked")
+    private T acquire(boolean timed, long nanos, boolean interruptible) throws InterruptedException {
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        boolean interrupted = false;
+        AdaptiveSizer sizing = this.sizing;
+        try {
+            for (;;) {
+                if (reserve()) {
+                    return missed(createReserved());
+                }
+                if (timed && nanos <= 0L) {
+                    return null;
+                }
+                Waiter w = new Waiter(Thread.currentThread());
+                waiters.offer(w);
+                if (sizing != null) {
+                    sizing.waits.increment();
+                }
+
+                // re-check, an object may have been checked in (or expired) before we were queued
+                T o = pollIdle();
+                if (o != null || reserve()) {
+                    if (w.cancel()) {
+                        waiters.remove(w);
+                        return missed(o != null ? o : createReserved());
+                    }
+                    // served meanwhile, give back what we got ourselves; it never left the pool,
+                    // so no checkIn hooks or return validation
+                    if (o != null) {
+                        giveBack(o, clock.millis());
+                    } else {
+                        release();
+                    }
+                }
+
+                while (!w.isDone()) {
+                    if (timed) {
+                        nanos = deadline - System.nanoTime();
+                        if (nanos <= 0L) {
+                            if (w.cancel()) {
+                                waiters.remove(w);
+                                return null;
+                            }
+                            break;
+                        }
+                        LockSupport.parkNanos(this, nanos);
+                    } else {
+                        LockSupport.park(this);
+                    }
+                    if (Thread.interrupted()) {
+                        if (interruptible && w.cancel()) {
+                            waiters.remove(w);
+                            throw new InterruptedException();
+                        }
+                        interrupted = true;
+                    }
+                }
+
+                Object handed = w.get();
+                if (handed == Waiter.PERMIT) {
+                    return missed(createReserved());
+                }
+                if (borrowFilter.accept((T) handed, clock.millis())) {
+                    return missed((T) handed);
+                }
+                // handed object failed validation, its slot was released, go again
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void acquireAsync(PoolFuture<T> future) {
+        T o = pollIdle();
+        if (o != null) {
+            future.deliver(o, true);
+            return;
+        }
+        AdaptiveSizer sizing = this.sizing;
+        if (reserve()) {
+            createAsync(future);
+            return;
+        }
+        AsyncWaiter w = new AsyncWaiter(future);
+        waiters.offer(w);
+        if (sizing != null) {
+            sizing.waits.increment();
+        }
+
+        // re-check, same as the blocking path
+        o = pollIdle();
+        if (o != null || reserve()) {
+            if (w.cancel()) {
+                waiters.remove(w);
+                if (o != null) {
+                    deliverMissed(future, o);
+                } else {
+                    createAsync(future);
+                }
+            } else if (o != null) {
+                giveBack(o, clock.millis());
+            } else {
+                release();
+            }
+        }
+    }
+
+    // counts borrows that found nothing idle, once they hand out an object: a timed out or
+    // failed checkOut is no miss, and a batch counts each of its objects once
+    void missed(int n) {
+        AdaptiveSizer sizing = this.sizing;
+        if (sizing != null) {
+            sizing.misses.add(n);
+        }
+        PoolMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.misses.add(n);
+        }
+    }
+
+    private T missed(T o) {
+        missed(1);
+        return o;
+    }
+
+    private void deliverMissed(PoolFuture<T> future, T o) {
+        if (future.deliver(o, false)) {
+            missed(1);
+        }
+    }
+
+    // create() on the creator executor, the slot is already reserved
+    private void createAsync(final PoolFuture<T> future) {
+        try {
+            getCreatorExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    T o;
+                    try {
+                        o = createReserved();
+                    } catch (RuntimeException e) {
+                        future.fail(e);
+                        return;
+                    }
+                    deliverMissed(future, o);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release();
+            future.fail(e);
+        }
+    }
+
+    private final class AsyncWaiter extends Waiter {
+        private final PoolFuture<T> future;
+
+        AsyncWaiter(PoolFuture<T> future) {
+            super(null);
+            this.future = future;
+        }
+
+        @Override
+        boolean offer(Object o) {
+            // a cancelled future gives up its place in the queue
+            if (future.isDone()) {
+                cancel();
+                return false;
+            }
+            return super.offer(o);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void signal(Object o) {
+            if (o == Waiter.PERMIT) {
+                createAsync(future);
+            } else if (borrowFilter.accept((T) o, clock.millis())) {
+                deliverMissed(future, (T) o);
+            } else {
+                // handed object failed validation, queue up again
+                acquireAsync(future);
+            }
+        }
+    }
+
+    private boolean reserve() {
+        for (;;) {
+            int n = size.get();
+            if (n >= maxSize) {
+                return false;
+            }
+            if (size.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // reserves up to n slots at once, returns how many were granted
+    private int reserve(int n) {
+        for (;;) {
+            int current = size.get();
+            int granted = Math.min(n, maxSize - current);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (size.compareAndSet(current, current + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    // gives back a slot, passing it on to the oldest waiter if any
+    private void release() {
+        size.decrementAndGet();
+        if (!waiters.isEmpty() && reserve() && !handOff(Waiter.PERMIT)) {
+            size.decrementAndGet();
+        }
+    }
+
+    private T createReserved() {
+        boolean created = false;
+        PoolMetrics metrics = this.metrics;
+        PoolListener<T> listener = this.listener;
+        long start = metrics != null || listener != null ? System.nanoTime() : 0L;
+        try {
+            // no objects available, create a new one
+            T o = create(this.o);
+            created = true;
+            if (metrics != null || listener != null) {
+                long nanos = System.nanoTime() - start;
+                if (metrics != null) {
+                    metrics.createTime.record(nanos);
+                    metrics.creates.increment();
+                }
+                if (listener != null) {
+                    listener.onCreate(o, nanos);
+                }
+            }
+            return o;
+        } finally {
+            if (!created) {
+                release();
+            }
+        }
+    }
+
+    // creates n objects for already reserved slots into batch, n - 1 of them on the creator executor
+    private void createReserved(int n, List<T> batch) {
+        final Object[] created = new Object[n];
+        final CountDownLatch done = new CountDownLatch(n - 1);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Executor executor = n > 1 ? getCreatorExecutor() : null;
+        for (int i = 1; i < n; i++) {
+            final int index = i;
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        created[index] = createReserved();
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
                     }
                 }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+        try {
+            created[0] = createReserved();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
         }
-        // no objects available, create a new one
-        o = create(this.o);
-        locked.put(o, new Long(now));
-        return(o);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        for (Object o : created) {
+            if (o != null) {
+                @SuppressWarnings("unchecked")
+                T t = (T) o;
+                batch.add(t);
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
     }
-    public synchronized void checkIn(T o) {
-        locked.remove(o);
-        unlocked.put(o, new Long(System.currentTimeMillis()));
+
+    // creates one object for the idle store (or a waiter), false if the pool is full
+    private boolean createIdle() {
+        if (!reserve()) {
+            return false;
+        }
+        giveBack(createReserved(), clock.millis());
+        return true;
+    }
+
+    // reserves the slots missing to min idle once and submits one creation per slot granted;
+    // a full pool grants none, and a failed create() is retried by the next call, not in a loop
+    private void topUpIfNeeded() {
+        int pending = pendingCreates.get();
+        int deficit = minIdle - idle.size() - pending;
+        if (deficit <= 0 || !pendingCreates.compareAndSet(pending, pending + deficit)) {
+            // nothing missing, or another thread is topping up
+            return;
+        }
+        int granted = reserve(deficit);
+        if (granted < deficit) {
+            pendingCreates.addAndGet(granted - deficit);
+        }
+        Executor executor = granted > 0 ? getCreatorExecutor() : null;
+        for (int i = 0; i < granted; i++) {
+            try {
+                executor.execute(topUpTask);
+            } catch (RejectedExecutionException e) {
+                for (int j = i; j < granted; j++) {
+                    pendingCreates.decrementAndGet();
+                    release();
+                }
+                return;
+            }
+        }
+    }
+
+    private boolean handOff(Object o) {
+        Waiter w;
+        while ((w = waiters.poll()) != null) {
+            if (w.offer(o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Magazine<T> magazine() {
+        int size = threadCacheSize;
+        if (size == 0 && !threadCacheUsed) {
+            return null;
+        }
+        Magazine<T> magazine = magazines.get();
+        if (magazine != null && magazine.capacity() != size) {
+            // cache was resized (or disabled), hand the old one back to the shared pool
+            threadMagazines.remove(magazine);
+            magazine.spill(magazine.capacity());
+            magazine = null;
+            magazines.remove();
+        }
+        if (magazine == null && size > 0) {
+            magazine = new Magazine<>(this, size);
+            magazines.set(magazine);
+            threadMagazines.offer(magazine);
+        }
+        return magazine;
+    }
+
+    // gives back the objects left in the caches of threads that died, they still hold their slot
+    private void reclaimMagazines() {
+        for (Magazine<T> magazine : threadMagazines) {
+            // whoever unregisters a dead thread's magazine owns it
+            if (magazine.isOwnerDead() && threadMagazines.remove(magazine)) {
+                magazine.reclaim();
+            }
+        }
+    }
+
+    private static int batchSize(Magazine<?> magazine) {
+        return Math.max(1, magazine.capacity() / 2);
     }
 }
@@ -0,0 +1,214 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-capacity {@link IdleStore} that keeps idle objects in integer-indexed slots, by identity.
+ * Timestamps live in a {@code long[]} next to them, so offer and poll allocate nothing and never
+ * call {@code hashCode()}/{@code equals()} of the pooled type; two equal objects get two slots.
+ * <p>
+ * Each slot is guarded by its own state word: a thread claims a slot with a CAS, reads or writes
+ * the plain item/stamp arrays, then publishes the new state with a volatile write.
+ * <p>
+ * A two-level bitmap points poll at the idle slots: one bit per slot, and a summary bit per
+ * word of 64 slots with any idle. A borrow reads about {@code capacity / 4096} summary words
+ * plus the words holding idle slots, instead of every slot state. Finding a free slot on offer
+ * still scans the states, after trying the slot freed last.
+ */
+final class SlotIdleStore<T> implements IdleStore<T> {
+
+    private static final int FREE = 0;
+    private static final int BUSY = 1;
+    private static final int IDLE = 2;
+
+    private final Object[] items;
+    private final long[] stamps;
+    private final AtomicIntegerArray states;
+    // bit set while a slot is IDLE: set after publishing IDLE, cleared before the slot is FREE
+    private final AtomicLongArray idleBits;
+    // bit set while a word of idleBits may be non-zero
+    private final AtomicLongArray summary;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger evictCursor = new AtomicInteger();
+    private final AtomicInteger freeHint = new AtomicInteger();
+    private final boolean random;
+
+    SlotIdleStore(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @param random start every scan at a random slot instead of the thread's own one, so any
+     *               idle object is as likely to be borrowed next
+     */
+    SlotIdleStore(int capacity, boolean random) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1, was " + capacity);
+        }
+        this.random = random;
+        items = new Object[capacity];
+        stamps = new long[capacity];
+        states = new AtomicIntegerArray(capacity);
+        idleBits = new AtomicLongArray((capacity + 63) >>> 6);
+        summary = new AtomicLongArray((idleBits.length() + 63) >>> 6);
+    }
+
+    @Override
+    public boolean offer(T o, long idleSince) {
+        int n = items.length;
+        if (size.get() >= n) {
+            return false;
+        }
+        // the slot freed last is most likely still free, and saves a scan of a nearly full store
+        int hint = freeHint.get();
+        if (states.get(hint) == FREE && states.compareAndSet(hint, FREE, BUSY)) {
+            put(hint, o, idleSince);
+            return true;
+        }
+        int start = start(n);
+        for (int i = 0; i < n; i++) {
+            int slot = (start + i) % n;
+            if (states.get(slot) == FREE && states.compareAndSet(slot, FREE, BUSY)) {
+                put(slot, o, idleSince);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void put(int slot, T o, long idleSince) {
+        items[slot] = o;
+        stamps[slot] = idleSince;
+        size.incrementAndGet();
+        states.set(slot, IDLE);
+        markIdle(slot);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll(Filter<T> filter) {
+        int start = start(items.length);
+        int startWord = start >>> 6;
+        int groups = summary.length();
+        for (int g = 0; g < groups && size.get() > 0; g++) {
+            int group = ((startWord >>> 6) + g) % groups;
+            long words = summary.get(group);
+            while (words != 0L) {
+                int b = g == 0 ? firstBit(words, startWord & 63) : Long.numberOfTrailingZeros(words);
+                words &= ~(1L << b);
+                int word = (group << 6) + b;
+                long bits = idleBits.get(word);
+                while (bits != 0L) {
+                    int bit = word == startWord ? firstBit(bits, start & 63) : Long.numberOfTrailingZeros(bits);
+                    bits &= ~(1L << bit);
+                    int slot = (word << 6) + bit;
+                    if (states.get(slot) == IDLE && states.compareAndSet(slot, IDLE, BUSY)) {
+                        T o = (T) items[slot];
+                        long idleSince = stamps[slot];
+                        items[slot] = null;
+                        size.decrementAndGet();
+                        clearIdle(slot);
+                        states.set(slot, FREE);
+                        freeHint.lazySet(slot);
+                        if (filter.accept(o, idleSince)) {
+                            return o;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int evict(Filter<T> filter, int max) {
+        int n = items.length;
+        // round-robin over the slots, one batch per run
+        int start = (evictCursor.get() & Integer.MAX_VALUE) % n;
+        int visited = 0;
+        int i = 0;
+        for (; i < n && visited < max; i++) {
+            int slot = (start + i) % n;
+            if (states.get(slot) == IDLE && states.compareAndSet(slot, IDLE, BUSY)) {
+                visited++;
+                T o = (T) items[slot];
+                if (filter.accept(o, stamps[slot])) {
+                    // still owned by us, put it back untouched
+                    states.set(slot, IDLE);
+                } else {
+                    items[slot] = null;
+                    size.decrementAndGet();
+                    clearIdle(slot);
+                    states.set(slot, FREE);
+                }
+            }
+        }
+        evictCursor.addAndGet(i);
+        return visited;
+    }
+
+    private void markIdle(int slot) {
+        int word = slot >>> 6;
+        setBit(idleBits, word, slot & 63);
+        setBit(summary, word >>> 6, word & 63);
+    }
+
+    // the slot must still be BUSY, so that it cannot be marked idle again meanwhile
+    private void clearIdle(int slot) {
+        int word = slot >>> 6;
+        if (clearBit(idleBits, word, slot & 63) == 0L) {
+            clearBit(summary, word >>> 6, word & 63);
+            // a slot of this word may have been marked idle in between, keep it visible
+            if (idleBits.get(word) != 0L) {
+                setBit(summary, word >>> 6, word & 63);
+            }
+        }
+    }
+
+    private static void setBit(AtomicLongArray bits, int i, int bit) {
+        long mask = 1L << bit;
+        for (;;) {
+            long v = bits.get(i);
+            if ((v & mask) != 0L || bits.compareAndSet(i, v, v | mask)) {
+                return;
+            }
+        }
+    }
+
+    // returns the word with the bit cleared
+    private static long clearBit(AtomicLongArray bits, int i, int bit) {
+        long mask = 1L << bit;
+        for (;;) {
+            long v = bits.get(i);
+            if (bits.compareAndSet(i, v, v & ~mask)) {
+                return v & ~mask;
+            }
+        }
+    }
+
+    // first set bit of a non-zero word at or after from, wrapping around
+    private static int firstBit(long bits, int from) {
+        long rotated = Long.rotateRight(bits, from);
+        return (from + Long.numberOfTrailingZeros(rotated)) & 63;
+    }
+
+
+    private int start(int n) {
+        int h = ThreadProbe.get();
+        if (random) {
+            // mix in the clock: cheap, uncontended, and random enough to pick a slot
+            long t = System.nanoTime();
+            h = (h ^ (int) t ^ (int) (t >>> 32)) * 0x9E3779B9;
+            h ^= h >>> 15;
+        }
+        return (h & Integer.MAX_VALUE) % n;
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+}
@@ -0,0 +1,42 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter for hot paths: each thread adds to the cell of its {@link ThreadProbe} stripe, cells
+ * sitting a cache line apart, so concurrent borrowers do not fight over one word.
+ * Reading sums all cells and is meant for periodic sampling.
+ */
+final class StripedCounter {
+
+    // longs per cell, 64 bytes
+    private static final int PAD = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    StripedCounter() {
+        int n = Integer.highestOneBit(Runtime.getRuntime().availableProcessors());
+        if (n < Runtime.getRuntime().availableProcessors()) {
+            n <<= 1;
+        }
+        cells = new AtomicLongArray(n * PAD);
+        mask = n - 1;
+    }
+
+    void add(long x) {
+        cells.getAndAdd((ThreadProbe.get() & mask) * PAD, x);
+    }
+
+    void increment() {
+        add(1L);
+    }
+
+    long sum() {
+        long sum = 0L;
+        for (int i = 0; i < cells.length(); i += PAD) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,71 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link IdleStore} split into independent lock-free stripes. Each thread has a home stripe picked
+ * from its id, so threads on different cores rarely CAS the same head. A thread whose home stripe
+ * is empty steals from the neighbouring stripes before giving up.
+ * All stripes share one idle counter, so {@link #size()} is the pool-wide idle count.
+ */
+final class StripedIdleStore<T> implements IdleStore<T> {
+
+    private final LockFreeIdleStore<T>[] stripes;
+    private final int mask;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger evictStart = new AtomicInteger();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    StripedIdleStore(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be >= 1, was " + stripes);
+        }
+        int n = Integer.highestOneBit(stripes);
+        if (n < stripes) {
+            n <<= 1;
+        }
+        this.stripes = new LockFreeIdleStore[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new LockFreeIdleStore<>(size);
+        }
+        this.mask = n - 1;
+    }
+
+    @Override
+    public boolean offer(T o, long idleSince) {
+        return stripes[home()].offer(o, idleSince);
+    }
+
+    @Override
+    public T poll(Filter<T> filter) {
+        int home = home();
+        for (int i = 0; i < stripes.length; i++) {
+            // i == 0 is the home stripe, then steal from the neighbours
+            T o = stripes[(home + i) & mask].poll(filter);
+            if (o != null) {
+                return o;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int evict(Filter<T> filter, int max) {
+        // start from a different stripe on every run so all of them get their turn
+        int start = evictStart.getAndIncrement();
+        int visited = 0;
+        for (int i = 0; i < stripes.length && visited < max; i++) {
+            visited += stripes[(start + i) & mask].evict(filter, max - visited);
+        }
+        return visited;
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+
+    private int home() {
+        return ThreadProbe.get() & mask;
+    }
+}
@@ -0,0 +1,16 @@
+package com.saharw.pooledobject;
+
+/**
+ * Cheap per-thread hash used to spread threads over stripes and slots without allocating.
+ */
+final class ThreadProbe {
+
+    private ThreadProbe() {
+    }
+
+    static int get() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
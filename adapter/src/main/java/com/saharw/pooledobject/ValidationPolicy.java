@@ -0,0 +1,81 @@
+package com.saharw.pooledobject;
+
+/**
+ * When a {@link PooledObject} calls {@link PooledObject#validate}. Policies combine with
+ * {@link #and(ValidationPolicy)}, e.g. {@code onReturn().and(whileIdle())}.
+ * The default, {@link #onBorrow()}, validates on every checkOut.
+ */
+public final class ValidationPolicy {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private static final ValidationPolicy ON_BORROW = new ValidationPolicy(0L, false, false);
+    private static final ValidationPolicy ON_RETURN = new ValidationPolicy(NEVER, true, false);
+    private static final ValidationPolicy WHILE_IDLE = new ValidationPolicy(NEVER, false, true);
+
+    // a borrowed object is validated once it has been idle at least this long
+    private final long borrowAfterIdleMillis;
+    private final boolean onReturn;
+    private final boolean whileIdle;
+
+    private ValidationPolicy(long borrowAfterIdleMillis, boolean onReturn, boolean whileIdle) {
+        this.borrowAfterIdleMillis = borrowAfterIdleMillis;
+        this.onReturn = onReturn;
+        this.whileIdle = whileIdle;
+    }
+
+    /**
+     * Validates every object handed out by checkOut.
+     */
+    public static ValidationPolicy onBorrow() {
+        return ON_BORROW;
+    }
+
+    /**
+     * Validates objects on checkIn, before they are handed to a waiter or parked idle;
+     * checkOut then trusts what it finds idle.
+     */
+    public static ValidationPolicy onReturn() {
+        return ON_RETURN;
+    }
+
+    /**
+     * Validates idle objects in the background, as the evictor visits them; has no effect
+     * unless {@link PooledObject#setEvictionPolicy(long, int)} runs the evictor.
+     */
+    public static ValidationPolicy whileIdle() {
+        return WHILE_IDLE;
+    }
+
+    /**
+     * Validates on checkOut only objects idle for at least {@code millis}, so an object checked
+     * in a moment ago (or handed over directly by a checkIn) is trusted.
+     */
+    public static ValidationPolicy idleLongerThan(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("idle time must be >= 0, was " + millis);
+        }
+        return new ValidationPolicy(millis, false, false);
+    }
+
+    /**
+     * @return a policy validating whenever this one or {@code other} does
+     */
+    public ValidationPolicy and(ValidationPolicy other) {
+        return new ValidationPolicy(Math.min(borrowAfterIdleMillis, other.borrowAfterIdleMillis),
+                onReturn || other.onReturn, whileIdle || other.whileIdle);
+    }
+
+    boolean validatesOnBorrow(PoolClock clock, long idleSince) {
+        long after = borrowAfterIdleMillis;
+        return after == 0L || (after != NEVER && clock.millis() - idleSince >= after);
+    }
+
+    boolean validatesOnReturn() {
+        return onReturn;
+    }
+
+    boolean validatesWhileIdle() {
+        return whileIdle;
+    }
+}
@@ -0,0 +1,59 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread parked in {@link PooledObject#checkOut} waiting for an object (or for the right to
+ * create one) because the pool is at its maximum size.
+ * The state moves exactly once from null to a handed object, {@link #PERMIT} or {@link #CANCELLED}.
+ * Subclasses that do not park a thread (asynchronous checkOut) override {@link #signal}.
+ */
+class Waiter {
+
+    // the waiter may create an object, the pool slot was reserved for it
+    static final Object PERMIT = new Object();
+    static final Object CANCELLED = new Object();
+
+    final Thread thread;
+    private final AtomicReference<Object> state = new AtomicReference<>();
+
+    Waiter(Thread thread) {
+        this.thread = thread;
+    }
+
+    /**
+     * Hands {@code o} (an object or {@link #PERMIT}) to the waiter.
+     *
+     * @return false if the waiter already gave up or was served
+     */
+    boolean offer(Object o) {
+        if (state.compareAndSet(null, o)) {
+            signal(o);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called once, on the serving thread, after {@code o} was handed to this waiter.
+     */
+    void signal(Object o) {
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return false if something was handed to the waiter first
+     */
+    boolean cancel() {
+        return state.compareAndSet(null, CANCELLED);
+    }
+
+    boolean isDone() {
+        return state.get() != null;
+    }
+
+    Object get() {
+        return state.get();
+    }
+}
@@ -0,0 +1,100 @@
+package com.saharw.pooledobject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Decisions of {@link AdaptiveSizer}, one period per {@code adjustTask.run()} on the test
+ * thread, with the counters the pool would feed it set by hand.
+ */
+public class AdaptiveSizerTest {
+
+    private static final long PERIOD_MILLIS = 1000;
+
+    private final PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+    private final PoolClock.Manual clock = new PoolClock.Manual();
+
+    @Before
+    public void setUp() {
+        pool.setClock(clock);
+        pool.setExpirationTime(Long.MAX_VALUE / 2);
+    }
+
+    @Test
+    public void sustainedWaitsGrowTheMaxSize() {
+        pool.setMaxSize(8);
+        AdaptiveSizer sizer = new AdaptiveSizer(pool, 4, 20, PERIOD_MILLIS);
+        for (int i = 1; i < AdaptiveSizer.SUSTAIN; i++) {
+            sizer.waits.increment();
+            period(sizer);
+        }
+        assertEquals(8, pool.getMaxSize());
+        sizer.waits.increment();
+        period(sizer);
+        assertEquals(10, pool.getMaxSize());
+    }
+
+    @Test
+    public void maxSizeStaysWithinTheUpperBound() {
+        pool.setMaxSize(19);
+        AdaptiveSizer sizer = new AdaptiveSizer(pool, 4, 20, PERIOD_MILLIS);
+        for (int i = 0; i < 3 * AdaptiveSizer.SUSTAIN; i++) {
+            sizer.waits.increment();
+            period(sizer);
+        }
+        assertEquals(20, pool.getMaxSize());
+    }
+
+    @Test
+    public void quietPoolShrinksTowardsTheLowerBound() {
+        pool.setMaxSize(16);
+        AdaptiveSizer sizer = new AdaptiveSizer(pool, 10, 20, PERIOD_MILLIS);
+        for (int i = 0; i < AdaptiveSizer.SUSTAIN; i++) {
+            period(sizer);
+        }
+        assertEquals(12, pool.getMaxSize());
+        for (int i = 0; i < AdaptiveSizer.SUSTAIN; i++) {
+            period(sizer);
+        }
+        assertEquals(10, pool.getMaxSize());
+    }
+
+    @Test
+    public void frequentMissesGrowTheMaxIdle() {
+        pool.setMaxSize(20);
+        pool.setMaxIdle(8);
+        AdaptiveSizer sizer = new AdaptiveSizer(pool, 4, 20, PERIOD_MILLIS);
+        sizer.borrows.add(100);
+        sizer.misses.add(10);
+        period(sizer);
+        assertEquals(10, pool.getMaxIdle());
+    }
+
+    @Test
+    public void idleObjectsNobodyBorrowedAreExpired() throws InterruptedException {
+        pool.setMaxSize(8);
+        pool.prewarm(4);
+        pool.setMinIdle(1);
+        AdaptiveSizer sizer = new AdaptiveSizer(pool, 4, 20, PERIOD_MILLIS);
+        clock.advance(AdaptiveSizer.SUSTAIN * PERIOD_MILLIS + 1);
+        period(sizer);
+
+        // down to the min idle
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(3, pool.expires.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void threadCacheIsRejected() {
+        PooledObjectTest.ThingPool cached = new PooledObjectTest.ThingPool();
+        cached.setThreadCacheSize(4);
+        cached.setAdaptiveSizing(4, 20, PERIOD_MILLIS);
+    }
+
+    private void period(AdaptiveSizer sizer) {
+        sizer.adjustTask.run();
+        clock.advance(PERIOD_MILLIS);
+    }
+}
@@ -0,0 +1,94 @@
+package com.saharw.pooledobject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Size classes of {@link ArrayPool}, what it takes back and what its statistics count.
+ */
+public class ArrayPoolTest {
+
+    @Test
+    public void borrowRoundsUpToTheClassLength() {
+        ArrayPool<byte[]> pool = ArrayPools.bytes(64, 1024);
+        assertEquals(64, pool.borrow(0).length);
+        assertEquals(64, pool.borrow(64).length);
+        assertEquals(128, pool.borrow(65).length);
+        assertEquals(1024, pool.borrow(1000).length);
+        // longer than the largest class, not pooled
+        assertEquals(1025, pool.borrow(1025).length);
+    }
+
+    @Test
+    public void releasedArrayIsBorrowedAgain() {
+        ArrayPool<int[]> pool = ArrayPools.ints(64, 1024);
+        int[] array = pool.borrow(100);
+        pool.release(array);
+        assertSame(array, pool.borrow(128));
+        assertNotSame(array, pool.borrow(128));
+    }
+
+    @Test
+    public void foreignArrayIsRejected() {
+        ArrayPool<byte[]> pool = ArrayPools.bytes(64, 1024);
+        pool.release(pool.borrow(64));
+        try {
+            pool.release(new byte[64]);
+            fail("foreign array taken back");
+        } catch (IllegalArgumentException expected) {
+        }
+        ArrayPool<byte[]> other = ArrayPools.bytes(64, 1024);
+        try {
+            other.release(pool.borrow(64));
+            fail("array of another pool taken back");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, pool.getStats().get(0).getIdle());
+        assertEquals(0, other.getStats().get(0).getIdle());
+    }
+
+    @Test
+    public void unpooledLengthsAreDropped() {
+        ArrayPool<long[]> pool = ArrayPools.longs(64, 1024);
+        pool.release(pool.borrow(4096));
+        pool.release(new long[100]);
+        assertEquals(0L, pool.getIdleBytes());
+    }
+
+    @Test
+    public void statsCountMissesNotCreations() {
+        ArrayPool<char[]> pool = ArrayPools.chars(64, 1024);
+        char[] a = pool.borrow(64);
+        char[] b = pool.borrow(64);
+        pool.release(a);
+        pool.release(b);
+        pool.release(pool.borrow(64));
+        pool.borrow(64);
+
+        ArrayPool.Stats stats = pool.getStats().get(0);
+        assertEquals(4L, stats.getBorrows());
+        assertEquals(2L, stats.getMisses());
+        assertEquals(2L, stats.getHits());
+        assertEquals(1, stats.getIdle());
+        assertEquals(2, stats.getLive());
+        assertEquals(128L, stats.getArrayBytes());
+        assertEquals(128L, pool.getIdleBytes());
+    }
+
+    @Test
+    public void droppedArraysAreNoLongerTakenBack() {
+        ArrayPool<byte[]> pool = ArrayPools.bytes(64, 1024);
+        pool.setMaxIdle(0);
+        byte[] array = pool.borrow(64);
+        pool.release(array);
+        try {
+            pool.release(array);
+            fail("dropped array taken back");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.saharw.pooledobject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Batch {@link PooledObject#checkOut(int, java.util.Collection)} and
+ * {@link PooledObject#checkIn(java.util.Collection)}: idle objects first, creations for the
+ * rest, nothing lost when a creation fails.
+ */
+public class BatchTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    @Test
+    public void idleObjectsAreTakenBeforeCreating() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        pool.setCreatorExecutor(DIRECT);
+        List<PooledObjectTest.Thing> first = new ArrayList<>();
+        pool.checkOut(2, first);
+        pool.checkIn(first);
+        assertEquals(2, pool.getIdleCount());
+
+        List<PooledObjectTest.Thing> batch = new ArrayList<>();
+        pool.checkOut(5, batch);
+        assertEquals(5, batch.size());
+        assertEquals(5, distinct(batch));
+        assertEquals(5, pool.creates.get());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void emptyBatchBorrowsNothing() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        List<PooledObjectTest.Thing> batch = new ArrayList<>();
+        pool.checkOut(0, batch);
+        assertEquals(0, batch.size());
+        try {
+            pool.checkOut(-1, batch);
+            fail("negative batch");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void failedCreationChecksTheBatchBackIn() {
+        final AtomicInteger creates = new AtomicInteger();
+        PooledObject<PooledObjectTest.Thing> pool = new PooledObject<PooledObjectTest.Thing>() {
+            @Override
+            public PooledObjectTest.Thing create(PooledObjectTest.Thing o) {
+                if (creates.incrementAndGet() == 3) {
+                    throw new IllegalStateException("no connection");
+                }
+                return new PooledObjectTest.Thing();
+            }
+
+            @Override
+            public boolean validate(PooledObjectTest.Thing o) {
+                return true;
+            }
+
+            @Override
+            public void expire(PooledObjectTest.Thing o) {
+            }
+        };
+        pool.setCreatorExecutor(DIRECT);
+        List<PooledObjectTest.Thing> batch = new ArrayList<>();
+        try {
+            pool.checkOut(4, batch);
+            fail("create() failure swallowed");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, batch.size());
+        assertEquals(3, pool.getIdleCount());
+        assertEquals(3, pool.getSize());
+    }
+
+    @Test
+    public void batchWaitsForTheRestOnABoundedPool() throws Exception {
+        final PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        pool.setMaxSize(3);
+        PooledObjectTest.Thing held = pool.checkOut();
+        final List<PooledObjectTest.Thing> batch = Collections.synchronizedList(
+                new ArrayList<PooledObjectTest.Thing>());
+        Thread borrower = new Thread() {
+            @Override
+            public void run() {
+                pool.checkOut(3, batch);
+            }
+        };
+        borrower.start();
+        awaitWaiting(borrower);
+        assertEquals(0, batch.size());
+
+        pool.checkIn(Arrays.asList(held));
+        borrower.join(TIMEOUT_MILLIS);
+        assertEquals(3, batch.size());
+        assertEquals(3, pool.creates.get());
+    }
+
+    @Test
+    public void batchCheckInServesWaitersFirst() throws Exception {
+        final PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        pool.setMaxSize(2);
+        List<PooledObjectTest.Thing> batch = new ArrayList<>();
+        pool.checkOut(2, batch);
+        final PooledObjectTest.Thing[] got = new PooledObjectTest.Thing[1];
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                got[0] = pool.checkOut();
+            }
+        };
+        waiter.start();
+        awaitWaiting(waiter);
+
+        pool.checkIn(batch);
+        waiter.join(TIMEOUT_MILLIS);
+        assertSame(batch.get(0), got[0]);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    private static int distinct(List<PooledObjectTest.Thing> things) {
+        Set<PooledObjectTest.Thing> set = Collections.newSetFromMap(
+                new IdentityHashMap<PooledObjectTest.Thing, Boolean>());
+        set.addAll(things);
+        return set.size();
+    }
+
+    private static void awaitWaiting(Thread t) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (t.getState() != Thread.State.WAITING) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(t + " never waited");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
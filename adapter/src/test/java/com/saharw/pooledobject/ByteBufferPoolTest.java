@@ -0,0 +1,109 @@
+package com.saharw.pooledobject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ByteBufferPoolTest {
+
+    private static final int SLAB = 4096;
+
+    @Test
+    public void borrowRoundsUpToTheSizeClass() {
+        ByteBufferPool pool = new ByteBufferPool(256, 4096, SLAB, Long.MAX_VALUE);
+        ByteBuffer buffer = pool.borrow(300);
+        assertEquals(512, buffer.capacity());
+        assertTrue(buffer.isDirect());
+        pool.release(buffer);
+        assertSame(buffer, pool.borrow(400));
+    }
+
+    @Test
+    public void smallClassesShareOneSlab() {
+        ByteBufferPool pool = new ByteBufferPool(256, 4096, SLAB, Long.MAX_VALUE);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < SLAB / 256; i++) {
+            buffers.add(pool.borrow(256));
+        }
+        assertEquals(SLAB, pool.getAllocatedBytes());
+        pool.borrow(256);
+        assertEquals(2 * SLAB, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void foreignBuffersAreRejected() {
+        ByteBufferPool pool = new ByteBufferPool(256, 4096, SLAB, Long.MAX_VALUE);
+        assertRejected(pool, ByteBuffer.allocate(256));
+        assertRejected(pool, ByteBuffer.allocateDirect(256));
+        assertRejected(pool, ByteBuffer.allocateDirect(1 << 16));
+        assertRejected(pool, new ByteBufferPool(256, 4096, SLAB, Long.MAX_VALUE).borrow(256));
+    }
+
+    @Test
+    public void oversizedBuffersAreFreedOnce() {
+        ByteBufferPool pool = new ByteBufferPool(256, 4096, SLAB, Long.MAX_VALUE);
+        ByteBuffer buffer = pool.borrow(10000);
+        assertEquals(10000, buffer.capacity());
+        assertEquals(0, pool.getAllocatedBytes());
+        pool.release(buffer);
+        assertRejected(pool, buffer);
+    }
+
+    @Test
+    public void releaseOverBudgetFreesTheBuffer() {
+        ByteBufferPool pool = new ByteBufferPool(256, 4096, SLAB, 4096);
+        ByteBuffer a = pool.borrow(4096);
+        ByteBuffer b = pool.borrow(4096);
+        assertEquals(8192, pool.getAllocatedBytes());
+        pool.release(a);
+        assertEquals(4096, pool.getAllocatedBytes());
+        pool.release(b);
+        assertEquals(4096, pool.getIdleBytes());
+    }
+
+    // creating a slab in one class trims the other classes, which must not need the first class
+    @Test
+    public void concurrentCreatesInTwoClassesNearTheBudgetComplete() throws Exception {
+        final ByteBufferPool pool = new ByteBufferPool(256, 512, SLAB, 3 * SLAB);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int capacity = i % 2 == 0 ? 256 : 512;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    List<ByteBuffer> held = new ArrayList<>();
+                    for (int round = 0; round < 5000; round++) {
+                        for (int j = round % 20; j >= 0; j--) {
+                            held.add(pool.borrow(capacity));
+                        }
+                        for (ByteBuffer buffer : held) {
+                            pool.release(buffer);
+                        }
+                        held.clear();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join(20000);
+            assertFalse("deadlocked", t.isAlive());
+        }
+    }
+
+    private static void assertRejected(ByteBufferPool pool, ByteBuffer buffer) {
+        try {
+            pool.release(buffer);
+            fail("released " + buffer);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.saharw.pooledobject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The idle orderings of {@link IdleStores}: which object a borrow gets, and that the pool keeps
+ * its idle objects when the store is replaced.
+ */
+public class IdleOrderTest {
+
+    private static final IdleStore.Filter<Integer> KEEP = new IdleStore.Filter<Integer>() {
+        @Override
+        public boolean accept(Integer o, long idleSince) {
+            return true;
+        }
+    };
+
+    @Test
+    public void lifoHandsOutTheNewest() {
+        assertEquals("[2, 1, 0]", drain(filled(IdleStores.<Integer>lifo(), 3)).toString());
+    }
+
+    @Test
+    public void fifoHandsOutTheOldest() {
+        assertEquals("[0, 1, 2]", drain(filled(IdleStores.<Integer>fifo(), 3)).toString());
+    }
+
+    @Test
+    public void fifoEvictsTheOldest() {
+        IdleStore<Integer> store = filled(IdleStores.<Integer>fifo(), 5);
+        final List<Integer> seen = new ArrayList<>();
+        store.evict(new IdleStore.Filter<Integer>() {
+            @Override
+            public boolean accept(Integer o, long idleSince) {
+                seen.add(o);
+                return false;
+            }
+        }, 2);
+        assertEquals("[0, 1]", seen.toString());
+        assertEquals("[2, 3, 4]", drain(store).toString());
+    }
+
+    @Test
+    public void randomHandsOutAnyObject() {
+        Set<Integer> firsts = new HashSet<>();
+        for (int round = 0; round < 200 && firsts.size() < 2; round++) {
+            IdleStore<Integer> store = filled(IdleStores.<Integer>random(16), 16);
+            firsts.add(store.poll(KEEP));
+            assertEquals(15, drain(store).size());
+        }
+        assertTrue("always borrowed " + firsts, firsts.size() > 1);
+    }
+
+    @Test
+    public void replacingTheStoreKeepsTheIdleObjects() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        PooledObjectTest.Thing a = pool.checkOut();
+        PooledObjectTest.Thing b = pool.checkOut();
+        pool.checkIn(a);
+        pool.checkIn(b);
+
+        pool.setIdleStore(IdleStores.<PooledObjectTest.Thing>fifo());
+        assertEquals(2, pool.getIdleCount());
+        pool.checkOut();
+        pool.checkOut();
+        assertEquals(2, pool.creates.get());
+    }
+
+    // 0 is the oldest
+    private static IdleStore<Integer> filled(IdleStore<Integer> store, int n) {
+        for (int i = 0; i < n; i++) {
+            store.offer(i, i);
+        }
+        return store;
+    }
+
+    private static List<Integer> drain(IdleStore<Integer> store) {
+        List<Integer> items = new ArrayList<>();
+        Integer o;
+        while ((o = store.poll(KEEP)) != null) {
+            items.add(o);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,191 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Per-key isolation, the bounds shared between keys, and waiting for a full key or total.
+ */
+public class KeyedPooledObjectTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    static final class Pool extends KeyedPooledObject<Integer, Object> {
+        @Override
+        public Object create(Integer key) {
+            if (key < 0) {
+                throw new IllegalStateException("no objects for key " + key);
+            }
+            return new Object();
+        }
+
+        @Override
+        public boolean validate(Integer key, Object o) {
+            return true;
+        }
+
+        @Override
+        public void expire(Integer key, Object o) {
+        }
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void checkInOfOneKeyMakesRoomForAnother() throws Exception {
+        final Pool pool = new Pool();
+        pool.setMaxTotal(1);
+        for (int round = 0; round < 2000; round++) {
+            Object held = pool.checkOut(0);
+            // creating for key 1 must expire the idle object of key 0 once it is checked in
+            Future<?> other = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    pool.checkIn(1, pool.checkOut(1));
+                    return null;
+                }
+            });
+            pool.checkIn(0, held);
+            other.get(5, TimeUnit.SECONDS);
+            assertEquals(1, pool.getSize());
+        }
+    }
+
+    @Test
+    public void keyWhoseCreateFailsIsDropped() {
+        Pool pool = new Pool();
+        pool.checkIn(0, pool.checkOut(0));
+        try {
+            pool.checkOut(-1);
+            fail("create() should have failed");
+        } catch (IllegalStateException expected) {
+            // key -1 has no objects
+        }
+        assertEquals(1, pool.getKeyCount());
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test
+    public void objectsAreNeverHandedToAnotherKey() {
+        Pool pool = new Pool();
+        Object zero = pool.checkOut(0);
+        pool.checkIn(0, zero);
+        Object one = pool.checkOut(1);
+        assertNotSame(zero, one);
+        pool.checkIn(1, one);
+        assertSame(zero, pool.checkOut(0));
+        assertEquals(2, pool.getSize());
+        assertEquals(1, pool.getIdleCount(1));
+    }
+
+    @Test
+    public void timedCheckOutOnAFullKeyReturnsNull() throws Exception {
+        Pool pool = new Pool();
+        pool.setMaxPerKey(1);
+        Object held = pool.checkOut(0);
+        assertNull(pool.checkOut(0, 50, TimeUnit.MILLISECONDS));
+        // another key is not held back
+        pool.checkIn(1, pool.checkOut(1, 50, TimeUnit.MILLISECONDS));
+        pool.checkIn(0, held);
+        assertSame(held, pool.checkOut(0, 50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void timedCheckOutWaitsForTheTotal() throws Exception {
+        final Pool pool = new Pool();
+        pool.setMaxTotal(1);
+        final Object held = pool.checkOut(0);
+        assertNull(pool.checkOut(1, 50, TimeUnit.MILLISECONDS));
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Thread.sleep(50);
+                pool.checkIn(0, held);
+                return null;
+            }
+        });
+        Object other = pool.checkOut(1, 5, TimeUnit.SECONDS);
+        assertNotSame(held, other);
+        assertEquals(1, pool.getSize());
+        assertEquals(0, pool.getSize(0));
+    }
+
+    @Test
+    public void waitingCheckOutIsInterruptible() throws Exception {
+        final Pool pool = new Pool();
+        pool.setMaxPerKey(1);
+        Object held = pool.checkOut(0);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pool.checkOut(0, 10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        };
+        waiter.start();
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        waiter.interrupt();
+        waiter.join(5000);
+        assertTrue(interrupted.get());
+        pool.checkIn(0, held);
+        assertSame(held, pool.checkOut(0, 50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void leastRecentlyUsedKeyIsDroppedPastMaxKeys() throws Exception {
+        Pool pool = new Pool();
+        pool.setMaxKeys(2);
+        pool.checkIn(0, pool.checkOut(0));
+        Thread.sleep(2);
+        Object held = pool.checkOut(1);
+        Thread.sleep(2);
+        pool.checkIn(2, pool.checkOut(2));
+        assertEquals(2, pool.getKeyCount());
+        assertEquals(0, pool.getSize(0));
+        assertEquals(2, pool.getSize());
+        pool.checkIn(1, held);
+    }
+
+    @Test
+    public void evictorExpiresIdleObjectsAndDropsEmptyKeys() throws Exception {
+        Pool pool = new Pool();
+        pool.setExpirationTime(0);
+        pool.checkIn(0, pool.checkOut(0));
+        pool.setEvictionPolicy(5, 16);
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pool.getKeyCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        } finally {
+            pool.setEvictionPolicy(0, 16);
+        }
+        assertEquals(0, pool.getKeyCount());
+        assertEquals(0, pool.getSize());
+        assertFalse(pool.getIdleCount(0) > 0);
+    }
+}
@@ -0,0 +1,115 @@
+package com.saharw.pooledobject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LeakDetector} reports sampled objects held too long once, forgets the ones checked in,
+ * and gives back the slot of the ones collected without a checkIn. Scans run on the test
+ * thread, by the pool's manual clock.
+ */
+public class LeakDetectorTest {
+
+    static final class Report {
+        final long heldMillis;
+        final boolean unreachable;
+
+        Report(long heldMillis, boolean unreachable) {
+            this.heldMillis = heldMillis;
+            this.unreachable = unreachable;
+        }
+    }
+
+    static final class Recorder implements LeakListener {
+        final List<Report> reports = new ArrayList<>();
+
+        @Override
+        public synchronized void onLeak(Throwable callSite, long heldMillis, boolean unreachable) {
+            assertTrue(callSite.getStackTrace().length > 0);
+            reports.add(new Report(heldMillis, unreachable));
+        }
+
+        synchronized int size() {
+            return reports.size();
+        }
+    }
+
+    private final PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+    private final PoolClock.Manual clock = new PoolClock.Manual();
+    private final Recorder recorder = new Recorder();
+
+    @Before
+    public void setUp() {
+        pool.setClock(clock);
+    }
+
+    @Test
+    public void objectHeldPastTheThresholdIsReportedOnce() {
+        LeakDetector<PooledObjectTest.Thing> detector = new LeakDetector<>(pool, 1, 100, recorder);
+        PooledObjectTest.Thing held = new PooledObjectTest.Thing();
+        detector.borrowed(held);
+
+        clock.advance(100);
+        detector.scanTask.run();
+        assertEquals(0, recorder.size());
+        clock.advance(1);
+        detector.scanTask.run();
+        detector.scanTask.run();
+
+        assertEquals(1, recorder.size());
+        assertEquals(101, recorder.reports.get(0).heldMillis);
+        assertFalse(recorder.reports.get(0).unreachable);
+        detector.returned(held);
+    }
+
+    @Test
+    public void returnedObjectIsForgotten() {
+        LeakDetector<PooledObjectTest.Thing> detector = new LeakDetector<>(pool, 1, 100, recorder);
+        PooledObjectTest.Thing held = new PooledObjectTest.Thing();
+        detector.borrowed(held);
+        detector.returned(held);
+
+        clock.advance(1000);
+        detector.scanTask.run();
+        assertEquals(0, recorder.size());
+    }
+
+    @Test
+    public void onlyOneBorrowInSampleRateIsTracked() {
+        LeakDetector<PooledObjectTest.Thing> detector = new LeakDetector<>(pool, 4, 100, recorder);
+        List<PooledObjectTest.Thing> held = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            PooledObjectTest.Thing thing = new PooledObjectTest.Thing();
+            held.add(thing);
+            detector.borrowed(thing);
+        }
+        clock.advance(1000);
+        detector.scanTask.run();
+        assertEquals(2, recorder.size());
+    }
+
+    @Test
+    public void collectedObjectGivesItsSlotBack() throws InterruptedException {
+        pool.setMaxSize(1);
+        LeakDetector<PooledObjectTest.Thing> detector = new LeakDetector<>(pool, 1, 0, recorder);
+        PooledObjectTest.Thing leaked = pool.checkOut();
+        detector.borrowed(leaked);
+        leaked = null;
+
+        for (int i = 0; i < 50 && recorder.size() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            detector.scanTask.run();
+        }
+        assertEquals(1, recorder.size());
+        assertTrue(recorder.reports.get(0).unreachable);
+        assertEquals(0, pool.getSize());
+    }
+}
@@ -0,0 +1,57 @@
+package com.saharw.pooledobject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link Lease} checks its object in exactly once, and is recycled once closed.
+ */
+public class LeaseTest {
+
+    @Test
+    public void closeChecksTheObjectIn() throws Exception {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        PooledObjectTest.Thing thing;
+        try (Lease<PooledObjectTest.Thing> lease = pool.lease()) {
+            thing = lease.get();
+            assertEquals(0, pool.getIdleCount());
+        }
+        assertEquals(1, pool.getIdleCount());
+        assertSame(thing, pool.checkOut());
+    }
+
+    @Test
+    public void secondCloseIsANoOp() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        Lease<PooledObjectTest.Thing> lease = pool.lease();
+        lease.close();
+        lease.close();
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test
+    public void closedLeaseHasNoObject() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        Lease<PooledObjectTest.Thing> lease = pool.lease();
+        lease.close();
+        try {
+            lease.get();
+            fail("object of a closed lease");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void closedLeaseIsReused() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        Lease<PooledObjectTest.Thing> first = pool.lease();
+        first.close();
+        Lease<PooledObjectTest.Thing> second = pool.lease();
+        assertSame(first, second);
+        second.close();
+    }
+}
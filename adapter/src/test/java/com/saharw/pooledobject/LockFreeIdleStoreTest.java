@@ -0,0 +1,129 @@
+package com.saharw.pooledobject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Eviction from the default store: it takes the oldest objects and keeps the stack in LIFO
+ * order, and borrowers are not locked out while it runs.
+ */
+public class LockFreeIdleStoreTest {
+
+    private static final IdleStore.Filter<Integer> KEEP = new IdleStore.Filter<Integer>() {
+        @Override
+        public boolean accept(Integer o, long idleSince) {
+            return true;
+        }
+    };
+
+    @Test
+    public void evictKeepsSurvivorsBelowNewerObjects() {
+        LockFreeIdleStore<Integer> store = filled(10);
+        final List<Integer> seen = new ArrayList<>();
+        int evicted = store.evict(new IdleStore.Filter<Integer>() {
+            @Override
+            public boolean accept(Integer o, long idleSince) {
+                seen.add(o);
+                return o % 2 == 0;
+            }
+        }, 4);
+
+        assertEquals(4, evicted);
+        assertEquals("[3, 2, 1, 0]", seen.toString());
+        assertEquals(8, store.size());
+        assertEquals("[9, 8, 7, 6, 5, 4, 2, 0]", drain(store).toString());
+    }
+
+    @Test
+    public void newerObjectsCanBeBorrowedDuringEvict() {
+        final LockFreeIdleStore<Integer> store = filled(5);
+        final List<Integer> borrowed = new ArrayList<>();
+        store.evict(new IdleStore.Filter<Integer>() {
+            @Override
+            public boolean accept(Integer o, long idleSince) {
+                if (borrowed.isEmpty()) {
+                    borrowed.add(store.poll(KEEP));
+                }
+                return true;
+            }
+        }, 2);
+
+        assertEquals("[4]", borrowed.toString());
+        assertEquals("[3, 2, 1, 0]", drain(store).toString());
+    }
+
+    @Test
+    public void evictOfWholeStoreLeavesItUsable() {
+        LockFreeIdleStore<Integer> store = filled(3);
+        store.evict(new IdleStore.Filter<Integer>() {
+            @Override
+            public boolean accept(Integer o, long idleSince) {
+                return false;
+            }
+        }, Integer.MAX_VALUE);
+
+        assertEquals(0, store.size());
+        store.offer(7, 7L);
+        assertEquals("[7]", drain(store).toString());
+    }
+
+    @Test
+    public void objectUnderEvictionIsSkippedByBorrowers() {
+        final LockFreeIdleStore<Integer> store = filled(2);
+        final List<Integer> borrowed = new ArrayList<>();
+        store.evict(new IdleStore.Filter<Integer>() {
+            @Override
+            public boolean accept(Integer o, long idleSince) {
+                borrowed.addAll(drain(store));
+                return true;
+            }
+        }, 1);
+
+        // 0 was popped while the filter held it, and is back on top once kept
+        assertEquals("[1]", borrowed.toString());
+        assertEquals(1, store.size());
+        assertEquals("[0]", drain(store).toString());
+    }
+
+    @Test
+    public void expiredObjectsAreNeverBorrowed() {
+        LockFreeIdleStore<Integer> store = filled(6);
+        store.evict(new IdleStore.Filter<Integer>() {
+            @Override
+            public boolean accept(Integer o, long idleSince) {
+                return o != 1 && o != 3;
+            }
+        }, 4);
+        assertEquals(4, store.size());
+        // evicting the rest unlinks the whole chain
+        assertEquals(4, store.evict(new IdleStore.Filter<Integer>() {
+            @Override
+            public boolean accept(Integer o, long idleSince) {
+                return o > 3;
+            }
+        }, 10));
+        assertEquals("[5, 4]", drain(store).toString());
+    }
+
+    // 0 is the oldest, n - 1 on top
+    private static LockFreeIdleStore<Integer> filled(int n) {
+        LockFreeIdleStore<Integer> store = new LockFreeIdleStore<>();
+        for (int i = 0; i < n; i++) {
+            store.offer(i, i);
+        }
+        return store;
+    }
+
+    private static List<Integer> drain(LockFreeIdleStore<Integer> store) {
+        List<Integer> items = new ArrayList<>();
+        Integer o;
+        while ((o = store.poll(KEEP)) != null) {
+            items.add(o);
+        }
+        return items;
+    }
+}
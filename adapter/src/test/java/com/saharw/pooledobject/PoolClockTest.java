@@ -0,0 +1,70 @@
+package com.saharw.pooledobject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Expiry follows the clock a pool is given, not the system time.
+ */
+public class PoolClockTest {
+
+    @Test
+    public void manualClockDrivesExpiry() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        PoolClock.Manual clock = new PoolClock.Manual(1000L);
+        pool.setClock(clock);
+        pool.setExpirationTime(100);
+
+        PooledObjectTest.Thing thing = pool.checkOut();
+        pool.checkIn(thing);
+        clock.advance(100);
+        thing = checkOutAgain(pool, thing);
+        assertEquals(0, pool.expires.get());
+
+        clock.set(1201);
+        assertNotSame(thing, pool.checkOut());
+        assertEquals(1, pool.expires.get());
+        assertEquals(2, pool.creates.get());
+    }
+
+    @Test
+    public void coarseClockFollowsTheSystemClock() throws InterruptedException {
+        PoolClock clock = PoolClock.coarse(1);
+        long start = clock.millis();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (clock.millis() == start && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue("coarse clock never moved", clock.millis() > start);
+        assertTrue(clock.millis() <= System.currentTimeMillis());
+    }
+
+    @Test
+    public void invalidClocksAreRejected() {
+        try {
+            PoolClock.coarse(0);
+            fail("tick of 0ms");
+        } catch (IllegalArgumentException expected) {
+        }
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        try {
+            pool.setClock(null);
+            fail("null clock");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertSame(PoolClock.system(), pool.getClock());
+    }
+
+    private static PooledObjectTest.Thing checkOutAgain(PooledObjectTest.ThingPool pool,
+                                                        PooledObjectTest.Thing expected) {
+        PooledObjectTest.Thing thing = pool.checkOut();
+        assertSame(expected, thing);
+        pool.checkIn(thing);
+        return thing;
+    }
+}
@@ -0,0 +1,146 @@
+package com.saharw.pooledobject;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.saharw.pooledobject.PooledObjectTest.Thing;
+import com.saharw.pooledobject.PooledObjectTest.ThingPool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PoolFutureTest {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor queued = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+    };
+
+    @Test
+    public void hitIsCompleteRightAway() throws Exception {
+        ThingPool pool = new ThingPool();
+        Thing idle = pool.checkOut();
+        pool.checkIn(idle);
+        PoolFuture<Thing> future = pool.checkOutAsync();
+        assertTrue(future.isDone());
+        assertSame(idle, future.get());
+    }
+
+    @Test
+    public void missIsCreatedOnTheCreatorExecutor() throws Exception {
+        ThingPool pool = new ThingPool();
+        pool.setCreatorExecutor(queued);
+        final AtomicReference<Thing> received = new AtomicReference<>();
+        PoolFuture<Thing> future = pool.checkOutAsync();
+        future.addListener(new PoolFuture.Listener<Thing>() {
+            @Override
+            public void onComplete(Thing value, Throwable failure) {
+                received.set(value);
+            }
+        });
+        assertFalse(future.isDone());
+        runTasks();
+        assertTrue(future.isDone());
+        assertSame(future.get(), received.get());
+        assertEquals(1, pool.creates.get());
+    }
+
+    @Test
+    public void waiterIsServedByACheckIn() throws Exception {
+        ThingPool pool = new ThingPool();
+        pool.setMaxSize(1);
+        Thing held = pool.checkOut();
+        PoolFuture<Thing> future = pool.checkOutAsync();
+        assertFalse(future.isDone());
+        pool.checkIn(held);
+        assertSame(held, future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void objectForACancelledWaiterIsNeverBorrowed() throws Exception {
+        ThingPool pool = new ThingPool();
+        pool.setMaxSize(1);
+        pool.setMetricsEnabled(true);
+        CountingListener listener = new CountingListener();
+        pool.setListener(listener);
+        Thing held = pool.checkOut();
+        PoolFuture<Thing> future = pool.checkOutAsync();
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+
+        pool.checkIn(held);
+        assertEquals(1, listener.checkIns.get());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, pool.getMetrics().getBorrows());
+        assertSame(held, pool.checkOut());
+    }
+
+    @Test
+    public void objectCreatedForACancelledFutureGoesIdle() {
+        ThingPool pool = new ThingPool();
+        pool.setCreatorExecutor(queued);
+        pool.setMetricsEnabled(true);
+        CountingListener listener = new CountingListener();
+        pool.setListener(listener);
+        PoolFuture<Thing> future = pool.checkOutAsync();
+        assertTrue(future.cancel(false));
+        runTasks();
+
+        assertEquals(1, pool.getSize());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, listener.checkIns.get());
+        assertEquals(0, pool.getMetrics().getBorrows());
+        assertEquals(0, pool.getMetrics().getMisses());
+    }
+
+    @Test
+    public void completedFutureCannotBeCancelled() throws Exception {
+        ThingPool pool = new ThingPool();
+        PoolFuture<Thing> future = pool.checkOutAsync();
+        Thing o = future.get();
+        assertFalse(future.cancel(false));
+        assertFalse(future.isCancelled());
+        assertSame(o, future.get());
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    static final class CountingListener implements PoolListener<Thing> {
+        final AtomicInteger checkOuts = new AtomicInteger();
+        final AtomicInteger checkIns = new AtomicInteger();
+
+        @Override
+        public void onCheckOut(Thing o, long waitNanos, boolean hit) {
+            checkOuts.incrementAndGet();
+        }
+
+        @Override
+        public void onCheckIn(Thing o) {
+            checkIns.incrementAndGet();
+        }
+
+        @Override
+        public void onCreate(Thing o, long createNanos) {
+        }
+
+        @Override
+        public void onExpire(Thing o) {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.saharw.pooledobject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * What {@link PoolMetrics} counts: every borrow once, a miss only when nothing idle was handed
+ * out, and expiries and failed validations as they happen.
+ */
+public class PoolMetricsTest {
+
+    private final ValidationPolicyTest.CheckedPool pool = new ValidationPolicyTest.CheckedPool();
+    private final PoolClock.Manual clock = new PoolClock.Manual();
+    private PoolMetrics metrics;
+
+    @Before
+    public void setUp() {
+        pool.setClock(clock);
+        pool.setCreatorExecutor(new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                task.run();
+            }
+        });
+        pool.setMetricsEnabled(true);
+        metrics = pool.getMetrics();
+    }
+
+    @Test
+    public void hitsAndMissesAddUpToBorrows() {
+        PooledObjectTest.Thing a = pool.checkOut();
+        PooledObjectTest.Thing b = pool.checkOut();
+        pool.checkIn(a);
+        pool.checkIn(pool.checkOut());
+        pool.checkIn(b);
+
+        assertEquals(3, metrics.getBorrows());
+        assertEquals(2, metrics.getMisses());
+        assertEquals(1, metrics.getHits());
+        assertEquals(2, metrics.getCreates());
+        assertEquals(2, metrics.getIdleCount());
+        assertEquals(0, metrics.getActiveCount());
+        assertEquals(3, metrics.getCheckOutWaitTime().getCount());
+        assertEquals(2, metrics.getCreateTime().getCount());
+    }
+
+    @Test
+    public void timedOutCheckOutIsNoMiss() throws InterruptedException {
+        pool.setMaxSize(1);
+        pool.checkOut();
+        assertNull(pool.checkOut(1, TimeUnit.MILLISECONDS));
+
+        assertEquals(1, metrics.getMisses());
+        assertEquals(1, metrics.getBorrows());
+    }
+
+    @Test
+    public void batchCountsEachObjectOnce() {
+        List<PooledObjectTest.Thing> batch = new ArrayList<>();
+        pool.checkOut(2, batch);
+        pool.checkIn(batch);
+        batch.clear();
+        pool.checkOut(3, batch);
+
+        assertEquals(5, metrics.getBorrows());
+        assertEquals(3, metrics.getMisses());
+        assertEquals(3, metrics.getCreates());
+    }
+
+    @Test
+    public void expiriesAndFailedValidationsAreCounted() {
+        pool.setExpirationTime(100);
+        PooledObjectTest.Thing thing = pool.checkOut();
+        pool.checkIn(thing);
+        clock.advance(101);
+        pool.checkIn(pool.checkOut());
+        assertEquals(1, metrics.getExpirations());
+
+        pool.valid = false;
+        pool.checkOut();
+        assertEquals(1, metrics.getValidationFailures());
+        assertEquals(2, metrics.getExpirations());
+    }
+
+    @Test
+    public void enablingAgainStartsFromZero() {
+        pool.checkOut();
+        pool.setMetricsEnabled(true);
+        assertEquals(0, pool.getMetrics().getBorrows());
+        pool.setMetricsEnabled(false);
+        assertNull(pool.getMetrics());
+    }
+}
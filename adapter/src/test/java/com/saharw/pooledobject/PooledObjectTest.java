@@ -0,0 +1,206 @@
+package com.saharw.pooledobject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Behaviour of a bounded {@link PooledObject}: who gets an object when it is full, and that
+ * objects and their slots are never lost.
+ */
+public class PooledObjectTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    static final class Thing {
+    }
+
+    static final class ThingPool extends PooledObject<Thing> {
+        final AtomicInteger creates = new AtomicInteger();
+        final AtomicInteger expires = new AtomicInteger();
+
+        @Override
+        public Thing create(Thing o) {
+            creates.incrementAndGet();
+            return new Thing();
+        }
+
+        @Override
+        public boolean validate(Thing o) {
+            return true;
+        }
+
+        @Override
+        public void expire(Thing o) {
+            expires.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void waitersAreServedInArrivalOrder() throws Exception {
+        final ThingPool pool = new ThingPool();
+        pool.setMaxSize(1);
+        Thing held = pool.checkOut();
+        final List<Integer> order = new CopyOnWriteArrayList<>();
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final int id = i;
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    Thing o = pool.checkOut();
+                    order.add(id);
+                    pool.checkIn(o);
+                }
+            };
+            t.start();
+            awaitParked(t);
+            waiters.add(t);
+        }
+        pool.checkIn(held);
+        for (Thread t : waiters) {
+            t.join(TIMEOUT_MILLIS);
+        }
+        assertEquals("[0, 1, 2]", order.toString());
+        assertEquals(1, pool.creates.get());
+    }
+
+    @Test
+    public void timedCheckOutReturnsNullOnFullPool() throws Exception {
+        ThingPool pool = new ThingPool();
+        pool.setMaxSize(1);
+        Thing held = pool.checkOut();
+        long start = System.nanoTime();
+        assertNull(pool.checkOut(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        // the timed out waiter must not swallow the next checkIn
+        pool.checkIn(held);
+        assertSame(held, pool.checkOut(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void maxSizeIsNeverExceeded() throws Exception {
+        final ThingPool pool = new ThingPool();
+        pool.setMaxSize(4);
+        final AtomicInteger out = new AtomicInteger();
+        final AtomicInteger maxOut = new AtomicInteger();
+        final AtomicInteger maxSize = new AtomicInteger();
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 2000; j++) {
+                        Thing o = pool.checkOut();
+                        record(maxOut, out.incrementAndGet());
+                        record(maxSize, pool.getSize());
+                        out.decrementAndGet();
+                        pool.checkIn(o);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join(TIMEOUT_MILLIS * 4);
+            assertTrue("checkOut stuck", !t.isAlive());
+        }
+        assertTrue("max out " + maxOut.get(), maxOut.get() <= 4);
+        assertTrue("max size " + maxSize.get(), maxSize.get() <= 4);
+        assertTrue("creates " + pool.creates.get(), pool.creates.get() <= 4);
+    }
+
+    @Test
+    public void objectsCachedByDeadThreadAreTakenBack() throws Exception {
+        final ThingPool pool = new ThingPool();
+        pool.setThreadCacheSize(4);
+        Thread worker = new Thread() {
+            @Override
+            public void run() {
+                pool.checkIn(pool.checkOut());
+            }
+        };
+        worker.start();
+        worker.join(TIMEOUT_MILLIS);
+
+        // the only object sits in the dead worker's cache until the evictor takes it back
+        assertEquals(0, pool.getIdleCount());
+        pool.setEvictionPolicy(10, 16);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (pool.getIdleCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        pool.setEvictionPolicy(0, 16);
+        assertNotNull(pool.checkOut());
+        assertEquals(1, pool.creates.get());
+    }
+
+    @Test
+    public void threadCacheIsRejectedOnABoundedPool() {
+        ThingPool bounded = new ThingPool();
+        bounded.setMaxSize(4);
+        try {
+            bounded.setThreadCacheSize(4);
+            fail("cache on a bounded pool");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, bounded.getThreadCacheSize());
+
+        ThingPool cached = new ThingPool();
+        cached.setThreadCacheSize(4);
+        try {
+            cached.setMaxSize(4);
+            fail("bound on a cached pool");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(Integer.MAX_VALUE, cached.getMaxSize());
+    }
+
+    @Test
+    public void checkOutChecksAgeUntilTheEvictorCatchesUp() {
+        ThingPool pool = new ThingPool();
+        PoolClock.Manual clock = new PoolClock.Manual();
+        pool.setClock(clock);
+        pool.setExpirationTime(100);
+        pool.checkIn(pool.checkOut());
+        clock.advance(1000);
+
+        // the evictor has not run yet, so it cannot vouch for the age of the idle objects
+        pool.setEvictionPolicy(TimeUnit.HOURS.toMillis(1), 1);
+        try {
+            assertNotNull(pool.checkOut());
+            assertEquals(1, pool.expires.get());
+        } finally {
+            pool.setEvictionPolicy(0, 1);
+        }
+    }
+
+    private static void record(AtomicInteger max, int value) {
+        int m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // lost against another new maximum
+        }
+    }
+
+    private static void awaitParked(Thread t) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (t.getState() != Thread.State.WAITING) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(t + " never waited");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Pre-warming and the min idle top-up: objects are created ahead of the borrows, within the
+ * max size, and a failing {@link PooledObject#create} is not retried in a loop.
+ */
+public class PrewarmTest {
+
+    // runs the top-up creations on the calling thread, so the test sees them done
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    static final class FailingPool extends PooledObject<PooledObjectTest.Thing> {
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        int attempts;
+
+        @Override
+        public PooledObjectTest.Thing create(PooledObjectTest.Thing o) {
+            attempts++;
+            if (failing.get()) {
+                throw new IllegalStateException("no connection");
+            }
+            return new PooledObjectTest.Thing();
+        }
+
+        @Override
+        public boolean validate(PooledObjectTest.Thing o) {
+            return true;
+        }
+
+        @Override
+        public void expire(PooledObjectTest.Thing o) {
+        }
+    }
+
+    @Test
+    public void prewarmedObjectsAreBorrowedWithoutCreating() throws Exception {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        assertEquals(5, pool.prewarm(5));
+        assertEquals(5, pool.getIdleCount());
+        assertEquals(5, pool.creates.get());
+
+        for (int i = 0; i < 5; i++) {
+            pool.checkOut();
+        }
+        assertEquals(5, pool.creates.get());
+    }
+
+    @Test
+    public void prewarmStopsAtTheMaxSize() throws Exception {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        pool.setMaxSize(3);
+        assertEquals(3, pool.prewarm(5));
+        assertEquals(3, pool.getSize());
+    }
+
+    @Test
+    public void prewarmReportsAFailedCreate() throws Exception {
+        FailingPool pool = new FailingPool();
+        try {
+            pool.prewarm(4);
+            fail("create() failure swallowed");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void minIdleIsToppedUpAfterBorrows() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        pool.setCreatorExecutor(DIRECT);
+        pool.setMinIdle(3);
+        assertEquals(3, pool.getIdleCount());
+
+        pool.checkOut();
+        assertEquals(3, pool.creates.get());
+        // the next borrow tops up the one taken before looking for an idle object
+        pool.checkOut();
+        assertEquals(4, pool.creates.get());
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    public void minIdleStaysWithinTheMaxSize() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        pool.setCreatorExecutor(DIRECT);
+        pool.setMaxSize(2);
+        pool.setMinIdle(3);
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(2, pool.getSize());
+    }
+
+    @Test
+    public void failedTopUpIsRetriedByTheNextBorrowOnly() {
+        FailingPool pool = new FailingPool();
+        pool.setCreatorExecutor(DIRECT);
+        pool.setMinIdle(2);
+        assertEquals(2, pool.attempts);
+        assertEquals(0, pool.getSize());
+
+        pool.failing.set(false);
+        pool.checkOut();
+        // two for min idle, the borrow took one of them
+        assertEquals(4, pool.attempts);
+        assertEquals(1, pool.getIdleCount());
+    }
+}
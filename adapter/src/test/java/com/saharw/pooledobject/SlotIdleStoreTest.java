@@ -0,0 +1,115 @@
+package com.saharw.pooledobject;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SlotIdleStore} keeps objects by identity, with their timestamps, and its bitmap finds
+ * every idle slot.
+ */
+public class SlotIdleStoreTest {
+
+    private static final IdleStore.Filter<Integer> KEEP = new IdleStore.Filter<Integer>() {
+        @Override
+        public boolean accept(Integer o, long idleSince) {
+            return true;
+        }
+    };
+
+    // equal to every other instance, and unusable as a hash key
+    static final class Clash {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Clash;
+        }
+
+        @Override
+        public int hashCode() {
+            throw new AssertionError("hashCode() called");
+        }
+    }
+
+    @Test
+    public void equalObjectsGetASlotEach() {
+        SlotIdleStore<Clash> store = new SlotIdleStore<>(4);
+        Clash a = new Clash();
+        Clash b = new Clash();
+        assertTrue(store.offer(a, 1L));
+        assertTrue(store.offer(b, 2L));
+        assertEquals(2, store.size());
+
+        final Map<Clash, Long> stamps = new IdentityHashMap<>();
+        IdleStore.Filter<Clash> record = new IdleStore.Filter<Clash>() {
+            @Override
+            public boolean accept(Clash o, long idleSince) {
+                stamps.put(o, idleSince);
+                return true;
+            }
+        };
+        store.poll(record);
+        store.poll(record);
+        assertEquals(Long.valueOf(1L), stamps.get(a));
+        assertEquals(Long.valueOf(2L), stamps.get(b));
+        assertNull(store.poll(record));
+    }
+
+    @Test
+    public void fullStoreRefusesOffers() {
+        SlotIdleStore<Object> store = new SlotIdleStore<>(2);
+        assertTrue(store.offer(new Object(), 0L));
+        assertTrue(store.offer(new Object(), 0L));
+        assertFalse(store.offer(new Object(), 0L));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void everySlotIsFoundThroughTheBitmap() {
+        // more than one summary word
+        int capacity = 64 * 64 + 100;
+        SlotIdleStore<Integer> store = new SlotIdleStore<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(store.offer(i, i));
+        }
+        // leave a few idle objects far apart
+        List<Integer> kept = new ArrayList<>();
+        IdleStore.Filter<Integer> sparse = new IdleStore.Filter<Integer>() {
+            @Override
+            public boolean accept(Integer o, long idleSince) {
+                return o % 1000 == 0;
+            }
+        };
+        assertEquals(capacity, store.evict(sparse, capacity));
+        assertEquals(5, store.size());
+
+        Integer o;
+        while ((o = store.poll(KEEP)) != null) {
+            kept.add(o);
+        }
+        assertEquals(5, kept.size());
+        for (Integer item : kept) {
+            assertEquals(0, item % 1000);
+        }
+    }
+
+    @Test
+    public void poolExpiresWhatTheStoreCannotHold() {
+        PooledObjectTest.ThingPool pool = new PooledObjectTest.ThingPool();
+        pool.setIdleStore(IdleStores.<PooledObjectTest.Thing>slots(1));
+        PooledObjectTest.Thing a = pool.checkOut();
+        PooledObjectTest.Thing b = pool.checkOut();
+        pool.checkIn(a);
+        pool.checkIn(b);
+
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, pool.expires.get());
+    }
+}
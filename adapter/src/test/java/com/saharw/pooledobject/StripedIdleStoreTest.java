@@ -0,0 +1,97 @@
+package com.saharw.pooledobject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Stealing between the stripes of {@link StripedIdleStore}: an object checked in on any stripe
+ * can be borrowed by any thread, and eviction reaches every stripe.
+ */
+public class StripedIdleStoreTest {
+
+    private static final int THREADS = 8;
+
+    private static final IdleStore.Filter<Integer> KEEP = new IdleStore.Filter<Integer>() {
+        @Override
+        public boolean accept(Integer o, long idleSince) {
+            return true;
+        }
+    };
+
+    @Test
+    public void objectsOfOtherStripesAreStolen() throws Exception {
+        StripedIdleStore<Integer> store = filledByThreads(THREADS);
+        assertEquals(THREADS, store.size());
+
+        List<Integer> borrowed = new ArrayList<>();
+        Integer o;
+        while ((o = store.poll(KEEP)) != null) {
+            borrowed.add(o);
+        }
+        Collections.sort(borrowed);
+        assertEquals(range(THREADS), borrowed);
+        assertEquals(0, store.size());
+        assertNull(store.poll(KEEP));
+    }
+
+    @Test
+    public void evictReachesEveryStripe() throws Exception {
+        StripedIdleStore<Integer> store = filledByThreads(THREADS);
+        final List<Integer> seen = new ArrayList<>();
+        int visited = store.evict(new IdleStore.Filter<Integer>() {
+            @Override
+            public boolean accept(Integer o, long idleSince) {
+                seen.add(o);
+                return false;
+            }
+        }, Integer.MAX_VALUE);
+
+        assertEquals(THREADS, visited);
+        Collections.sort(seen);
+        assertEquals(range(THREADS), seen);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void evictStopsAtTheBatchSize() throws Exception {
+        StripedIdleStore<Integer> store = filledByThreads(THREADS);
+        assertEquals(3, store.evict(KEEP, 3));
+        assertEquals(THREADS, store.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noStripesIsRejected() {
+        new StripedIdleStore<Integer>(0);
+    }
+
+    // each object offered by a thread of its own, so they land on different stripes
+    private static StripedIdleStore<Integer> filledByThreads(int n) throws InterruptedException {
+        final StripedIdleStore<Integer> store = new StripedIdleStore<>(4);
+        for (int i = 0; i < n; i++) {
+            final int item = i;
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    store.offer(item, item);
+                }
+            };
+            t.start();
+            t.join();
+        }
+        return store;
+    }
+
+    private static List<Integer> range(int n) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+}
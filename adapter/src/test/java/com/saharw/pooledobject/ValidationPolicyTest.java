@@ -0,0 +1,143 @@
+package com.saharw.pooledobject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * When each {@link ValidationPolicy} calls {@link PooledObject#validate}, and what happens to
+ * an object that fails.
+ */
+public class ValidationPolicyTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    static final class CheckedPool extends PooledObject<PooledObjectTest.Thing> {
+        final AtomicInteger validations = new AtomicInteger();
+        final AtomicInteger expires = new AtomicInteger();
+        volatile boolean valid = true;
+
+        @Override
+        public PooledObjectTest.Thing create(PooledObjectTest.Thing o) {
+            return new PooledObjectTest.Thing();
+        }
+
+        @Override
+        public boolean validate(PooledObjectTest.Thing o) {
+            validations.incrementAndGet();
+            return valid;
+        }
+
+        @Override
+        public void expire(PooledObjectTest.Thing o) {
+            expires.incrementAndGet();
+        }
+    }
+
+    private final CheckedPool pool = new CheckedPool();
+    private final PoolClock.Manual clock = new PoolClock.Manual();
+
+    @Before
+    public void setUp() {
+        pool.setClock(clock);
+    }
+
+    @Test
+    public void onBorrowValidatesEveryIdleObjectHandedOut() {
+        PooledObjectTest.Thing thing = pool.checkOut();
+        assertEquals(0, pool.validations.get());
+        pool.checkIn(thing);
+        assertEquals(0, pool.validations.get());
+        assertSame(thing, pool.checkOut());
+        assertEquals(1, pool.validations.get());
+
+        pool.checkIn(thing);
+        pool.valid = false;
+        assertNotSame(thing, pool.checkOut());
+        assertEquals(1, pool.expires.get());
+    }
+
+    @Test
+    public void onReturnValidatesOnCheckInOnly() {
+        pool.setValidationPolicy(ValidationPolicy.onReturn());
+        PooledObjectTest.Thing thing = pool.checkOut();
+        pool.checkIn(thing);
+        assertEquals(1, pool.validations.get());
+        pool.checkOut();
+        assertEquals(1, pool.validations.get());
+
+        pool.valid = false;
+        pool.checkIn(thing);
+        assertEquals(1, pool.expires.get());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void idleLongerThanTrustsRecentCheckIns() {
+        pool.setValidationPolicy(ValidationPolicy.idleLongerThan(100));
+        PooledObjectTest.Thing thing = pool.checkOut();
+        pool.checkIn(thing);
+        clock.advance(99);
+        pool.checkOut();
+        assertEquals(0, pool.validations.get());
+
+        pool.checkIn(thing);
+        clock.advance(100);
+        pool.checkOut();
+        assertEquals(1, pool.validations.get());
+    }
+
+    @Test
+    public void combinedPolicyValidatesWhenEitherDoes() {
+        pool.setValidationPolicy(ValidationPolicy.onReturn().and(ValidationPolicy.idleLongerThan(100)));
+        PooledObjectTest.Thing thing = pool.checkOut();
+        pool.checkIn(thing);
+        pool.checkOut();
+        assertEquals(1, pool.validations.get());
+
+        pool.checkIn(thing);
+        clock.advance(100);
+        pool.checkOut();
+        assertEquals(3, pool.validations.get());
+    }
+
+    @Test
+    public void whileIdleValidatesInTheEvictor() throws InterruptedException {
+        pool.setValidationPolicy(ValidationPolicy.whileIdle());
+        pool.setExpirationTime(Long.MAX_VALUE / 2);
+        pool.checkIn(pool.checkOut());
+        pool.valid = false;
+        pool.setEvictionPolicy(10, 16);
+        try {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (pool.getIdleCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        } finally {
+            pool.setEvictionPolicy(0, 16);
+        }
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, pool.expires.get());
+    }
+
+    @Test
+    public void invalidPoliciesAreRejected() {
+        try {
+            ValidationPolicy.idleLongerThan(-1);
+            fail("negative idle time");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            pool.setValidationPolicy(null);
+            fail("null policy");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertSame(ValidationPolicy.onBorrow(), pool.getValidationPolicy());
+    }
+}
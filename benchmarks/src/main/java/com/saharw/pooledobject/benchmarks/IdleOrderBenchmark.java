@@ -0,0 +1,122 @@
+package com.saharw.pooledobject.benchmarks;
+
+import com.saharw.pooledobject.IdleStore;
+import com.saharw.pooledobject.IdleStores;
+import com.saharw.pooledobject.PooledObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Cost of a borrow/use/return cycle under each idle ordering, for pools holding more and more
+ * idle objects. The object is shaped like the sample {@code Guitar} (three strings and a flag),
+ * and using it reads all of them, so what the ordering hands out decides how often that walk
+ * misses the CPU caches. Objects are checked in shuffled, as a long-running pool ends up.
+ * <p>
+ * Usage: {@code IdleOrderBenchmark [seconds per run]}
+ */
+public final class IdleOrderBenchmark {
+
+    private IdleOrderBenchmark() {
+    }
+
+    static final class Guitar {
+        String mManufacturer;
+        String mYear;
+        String mColor;
+        boolean mIsPlaying;
+
+        Guitar(int i) {
+            mManufacturer = "manufacturer-" + i;
+            mYear = Integer.toString(1950 + i % 70);
+            mColor = "color-" + (i * 31);
+        }
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+        int[] populations = {16, 4_096, 65_536, 524_288};
+
+        System.out.printf("%-8s %12s %12s %12s %12s%n", "ns/op", "16 idle", "4k idle", "64k idle", "512k idle");
+        for (String order : new String[]{"lifo", "fifo", "random"}) {
+            System.out.printf("%-8s", order);
+            for (int population : populations) {
+                System.out.printf(" %12.1f", run(order, population, seconds));
+            }
+            System.out.println();
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static double run(String order, int population, double seconds) {
+        PooledObject<Guitar> pool = pool();
+        Supplier<IdleStore<Guitar>> store = switch (order) {
+            case "lifo" -> IdleStores::lifo;
+            case "fifo" -> IdleStores::fifo;
+            default -> () -> IdleStores.random(population);
+        };
+        pool.setIdleStore(store.get());
+
+        List<Guitar> guitars = new ArrayList<>(population);
+        for (int i = 0; i < population; i++) {
+            guitars.add(pool.checkOut());
+        }
+        Collections.shuffle(guitars, new Random(42));
+        for (Guitar g : guitars) {
+            pool.checkIn(g);
+        }
+        guitars = null;
+
+        // warm-up, then timed batches until the time is up
+        cycles(pool, 200_000);
+        long ops = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        long now;
+        do {
+            cycles(pool, 100_000);
+            ops += 100_000;
+            now = System.nanoTime();
+        } while (now < end);
+        return (double) (now - start) / ops;
+    }
+
+    private static void cycles(PooledObject<Guitar> pool, int n) {
+        long s = 0;
+        for (int i = 0; i < n; i++) {
+            Guitar g = pool.checkOut();
+            g.mIsPlaying = !g.mIsPlaying;
+            s += g.mManufacturer.length() + g.mYear.charAt(0) + g.mColor.charAt(g.mColor.length() - 1);
+            pool.checkIn(g);
+        }
+        sink += s;
+    }
+
+    private static PooledObject<Guitar> pool() {
+        PooledObject<Guitar> pool = new PooledObject<Guitar>() {
+            private int count;
+
+            @Override
+            public Guitar create(Guitar o) {
+                return new Guitar(count++);
+            }
+
+            @Override
+            public boolean validate(Guitar o) {
+                return true;
+            }
+
+            @Override
+            public void expire(Guitar o) {
+            }
+        };
+        // long enough that nothing expires during a run
+        pool.setExpirationTime(Long.MAX_VALUE / 2);
+        return pool;
+    }
+}
@@ -0,0 +1,42 @@
+package com.saharw.pooledobject.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+/**
+ * Baseline: the pool as it used to be, synchronized methods with create() called under the
+ * monitor, plus a max size enforced with wait/notify.
+ */
+final class MonitorPool<T> {
+
+    private final Supplier<T> factory;
+    private final int maxSize;
+    private final Deque<T> idle = new ArrayDeque<>();
+    private int size;
+
+    MonitorPool(Supplier<T> factory, int maxSize) {
+        this.factory = factory;
+        this.maxSize = maxSize;
+    }
+
+    synchronized T checkOut() throws InterruptedException {
+        while (idle.isEmpty() && size >= maxSize) {
+            wait();
+        }
+        if (!idle.isEmpty()) {
+            return idle.pop();
+        }
+        size++;
+        return factory.get();
+    }
+
+    synchronized void checkIn(T o) {
+        idle.push(o);
+        notify();
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,126 @@
+package com.saharw.pooledobject.benchmarks;
+
+import com.saharw.pooledobject.PooledObject;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Borrow/return throughput with one virtual thread per task (100k by default) sharing a bounded
+ * pool whose objects are slow to create and are held across blocking I/O (simulated by sleeps).
+ * Compares {@link PooledObject} with {@link MonitorPool}, whose synchronized methods pin the
+ * carrier threads while a virtual thread waits or creates.
+ * <p>
+ * A run that has not finished after {@code timeoutSeconds} (pinned carriers never recover) is
+ * reported and the JVM is halted, since its threads cannot be interrupted out of the monitor.
+ * <p>
+ * Usage: {@code VirtualThreadBenchmark [threads] [borrowsPerThread] [poolSize] [holdMillis] [createMillis]
+ * [timeoutSeconds]}
+ */
+public final class VirtualThreadBenchmark {
+
+    private VirtualThreadBenchmark() {
+    }
+
+    interface Task {
+        void run() throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = arg(args, 0, 100_000);
+        int borrows = arg(args, 1, 10);
+        int poolSize = arg(args, 2, 256);
+        long holdMillis = arg(args, 3, 1);
+        long createMillis = arg(args, 4, 1);
+        int timeoutSeconds = arg(args, 5, 120);
+
+        System.out.printf("%,d virtual threads x %d borrows, pool of %d, hold %dms, create %dms, %d cpus%n",
+                threads, borrows, poolSize, holdMillis, createMillis, Runtime.getRuntime().availableProcessors());
+
+        PooledObject<byte[]> pooled = new PooledObject<byte[]>() {
+            @Override
+            public byte[] create(byte[] o) {
+                sleep(createMillis);
+                return new byte[64];
+            }
+
+            @Override
+            public boolean validate(byte[] o) {
+                return true;
+            }
+
+            @Override
+            public void expire(byte[] o) {
+            }
+        };
+        pooled.setMaxSize(poolSize);
+        run("PooledObject", threads, borrows, timeoutSeconds, () -> {
+            for (int i = 0; i < borrows; i++) {
+                byte[] o = pooled.checkOut();
+                sleep(holdMillis);
+                pooled.checkIn(o);
+            }
+        });
+        System.out.printf("  objects created: %d%n", pooled.getSize());
+
+        MonitorPool<byte[]> monitor = new MonitorPool<>(() -> {
+            sleep(createMillis);
+            return new byte[64];
+        }, poolSize);
+        run("synchronized pool", threads, borrows, timeoutSeconds, () -> {
+            for (int i = 0; i < borrows; i++) {
+                byte[] o = monitor.checkOut();
+                sleep(holdMillis);
+                monitor.checkIn(o);
+            }
+        });
+        System.out.printf("  objects created: %d%n", monitor.size());
+    }
+
+    private static void run(String name, int threads, int borrows, int timeoutSeconds, Task task)
+            throws InterruptedException {
+        // a platform thread of its own: the caller may never be scheduled again once carriers are pinned
+        Thread watchdog = new Thread(() -> {
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(timeoutSeconds));
+            } catch (InterruptedException e) {
+                return;
+            }
+            System.out.printf("%-18s did not finish in %ds (carrier threads pinned)%n", name, timeoutSeconds);
+            System.out.flush();
+            Runtime.getRuntime().halt(1);
+        }, "benchmark-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        watchdog.interrupt();
+        System.out.printf("%-18s %,8d ms  %,12.0f borrows/s%n", name, nanos / 1_000_000,
+                (double) threads * borrows / nanos * 1e9);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int arg(String[] args, int index, int def) {
+        return args.length > index ? Integer.parseInt(args[index]) : def;
+    }
+}
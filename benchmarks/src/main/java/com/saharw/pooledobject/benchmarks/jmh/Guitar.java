@@ -0,0 +1,41 @@
+package com.saharw.pooledobject.benchmarks.jmh;
+
+import com.saharw.pooledobject.Pooled;
+
+/**
+ * The sample app's {@code Guitar}, so the annotation processor generates the same
+ * {@code Pooled_Guitar} the app uses, pool and generated {@code reset} included.
+ */
+@Pooled
+public class Guitar {
+
+    public String mManufacturer;
+    public String mYear;
+    public String mColor;
+    public boolean mIsPlaying;
+
+    public Guitar() {
+    }
+
+    public Guitar(Guitar objToClone) {
+        this.mManufacturer = objToClone.mManufacturer;
+        this.mYear = objToClone.mYear;
+        this.mColor = objToClone.mColor;
+        this.mIsPlaying = objToClone.mIsPlaying;
+    }
+
+    public Guitar(String manufacturer, String year, String color, boolean isPlaying) {
+        this.mManufacturer = manufacturer;
+        this.mYear = year;
+        this.mColor = color;
+        this.mIsPlaying = isPlaying;
+    }
+
+    public boolean isValid() {
+        return mIsPlaying;
+    }
+
+    public void expire() {
+        this.mIsPlaying = false;
+    }
+}
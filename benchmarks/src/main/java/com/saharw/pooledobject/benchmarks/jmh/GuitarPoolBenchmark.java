@@ -0,0 +1,164 @@
+package com.saharw.pooledobject.benchmarks.jmh;
+
+import com.saharw.pooledobject.PoolClock;
+import com.saharw.pooledobject.PooledObject;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Borrow/use/return of the generated {@code Pooled_Guitar} pool against allocating a new
+ * {@link Guitar}. Using an object reads all its fields, so pooled and allocated objects do the
+ * same work. Run at several thread counts by {@link GuitarPoolBenchmarks}.
+ * <ul>
+ * <li>{@link #borrowReturn}: every checkOut finds an idle guitar;</li>
+ * <li>{@link #borrowReturnCoarseClock}: the same on a {@link PoolClock#coarse} clock;</li>
+ * <li>{@link #missHeavy}: nothing is kept idle, every checkOut creates a guitar and every
+ * checkIn expires it;</li>
+ * <li>{@link #expiryHeavy}: every idle guitar has expired by the time it is borrowed again, so
+ * each checkOut expires it and renews it in place from the prototype (the generated
+ * {@code reset});</li>
+ * <li>{@link #allocate}: {@code new Guitar(prototype)}, the baseline. The guitar escapes to a
+ * {@link Blackhole}, otherwise escape analysis removes the allocation and only the field reads
+ * are measured.</li>
+ * </ul>
+ * A hit reads the pool clock twice, once for the age check of checkOut and once for the
+ * timestamp of checkIn, and the default store allocates a 32 byte node per checkIn. Where
+ * {@code System.currentTimeMillis()} is slow (tens of ns on some virtual machines), the two
+ * reads are most of the cost of a hit, which {@link #borrowReturnCoarseClock} shows; run with
+ * the {@code gc} profiler to see the allocations.
+ * Each benchmark runs in its own JVM, so the shared static pool is configured by the state of
+ * the benchmark alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuitarPoolBenchmark {
+
+    static final Guitar PROTOTYPE = new Guitar("Fender", "1954", "sunburst", true);
+
+    @SuppressWarnings("unchecked")
+    static PooledObject<Guitar> pool() {
+        return Pooled_Guitar.pool;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Hits {
+        PooledObject<Guitar> pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pool = pool();
+            pool.setPrototype(PROTOTYPE);
+            // long enough that nothing expires during a run
+            pool.setExpirationTime(TimeUnit.HOURS.toMillis(1));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CoarseHits {
+        PooledObject<Guitar> pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pool = pool();
+            pool.setPrototype(PROTOTYPE);
+            pool.setExpirationTime(TimeUnit.HOURS.toMillis(1));
+            pool.setClock(PoolClock.coarse(1));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.setClock(PoolClock.system());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Misses {
+        PooledObject<Guitar> pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pool = pool();
+            pool.setPrototype(PROTOTYPE);
+            pool.setMaxIdle(0);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Expiries {
+        PooledObject<Guitar> pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pool = pool();
+            pool.setPrototype(PROTOTYPE);
+            pool.setExpirationTime(0L);
+            // a "millisecond" per nanosecond: whatever went idle has expired by the next borrow
+            pool.setClock(new PoolClock() {
+                @Override
+                public long millis() {
+                    return System.nanoTime();
+                }
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.setClock(PoolClock.system());
+        }
+    }
+
+    @Benchmark
+    public int borrowReturn(Hits state) {
+        return cycle(state.pool);
+    }
+
+    @Benchmark
+    public int borrowReturnCoarseClock(CoarseHits state) {
+        return cycle(state.pool);
+    }
+
+    @Benchmark
+    public int missHeavy(Misses state) {
+        return cycle(state.pool);
+    }
+
+    @Benchmark
+    public int expiryHeavy(Expiries state) {
+        return cycle(state.pool);
+    }
+
+    @Benchmark
+    public int allocate(Blackhole escape) {
+        Guitar g = new Guitar(PROTOTYPE);
+        escape.consume(g);
+        return use(g);
+    }
+
+    private static int cycle(PooledObject<Guitar> pool) {
+        Guitar g = pool.checkOut();
+        int r = use(g);
+        pool.checkIn(g);
+        return r;
+    }
+
+    private static int use(Guitar g) {
+        return g.mManufacturer.length() + g.mYear.charAt(0) + g.mColor.length() + (g.mIsPlaying ? 1 : 0);
+    }
+}
@@ -0,0 +1,50 @@
+package com.saharw.pooledobject.benchmarks.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link GuitarPoolBenchmark} at 1, 2, 4 and 8 threads and at one thread per processor,
+ * then prints ns/op side by side.
+ * <p>
+ * Usage: {@code GuitarPoolBenchmarks [benchmark regex [profiler]]}, e.g.
+ * {@code borrowReturn|allocate gc} to also report the bytes allocated per operation
+ */
+public final class GuitarPoolBenchmarks {
+
+    private GuitarPoolBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = GuitarPoolBenchmark.class.getSimpleName() + "\\.(" + (args.length > 0 ? args[0] : ".*") + ")$";
+        int processors = Runtime.getRuntime().availableProcessors();
+        List<Integer> threads = new ArrayList<>(List.of(1, 2, 4, 8));
+        if (!threads.contains(processors)) {
+            threads.add(processors);
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (int t : threads) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(t);
+            if (args.length > 1) {
+                options.addProfiler(args[1]);
+            }
+            for (RunResult result : new Runner(options.build()).run()) {
+                lines.add(String.format("%-14s %3d threads %10.1f ± %.1f ns/op",
+                        result.getParams().getBenchmark().replaceAll(".*\\.", ""), t,
+                        result.getPrimaryResult().getScore(), result.getPrimaryResult().getScoreError()));
+            }
+        }
+        lines.sort(null);
+        System.out.println();
+        lines.forEach(System.out::println);
+    }
+}
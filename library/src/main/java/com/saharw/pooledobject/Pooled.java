@@ -11,4 +11,9 @@ import java.lang.annotation.RetentionPolicy;
 @Retention(RetentionPolicy.SOURCE)
 public @interface Pooled {
     int version() default 0;
+
+    /**
+     * Per-thread cache size of the generated pool, 0 (the default) disables the cache.
+     */
+    int threadCacheSize() default 0;
 }
@@ -43,6 +43,7 @@ import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.MirroredTypeException;
@@ -69,7 +70,11 @@ public final class PooledObjectProcessor extends AbstractProcessor {
     private final String CREATE_METHOD_NAME = "create";
     private final String VALIDATE_METHOD_NAME = "validate";
     private final String EXPIRE_METHOD_NAME = "expire";
+    private final String RESET_METHOD_NAME = "reset";
+    private final String RESET_PARAM_NAME = "target";
+    private final String GET_PROTOTYPE_METHOD = "getPrototype";
     private final String IS_VALID_METHOD = "isValid";
+    private final String SET_THREAD_CACHE_SIZE_METHOD = "setThreadCacheSize";
 
     static final class Property {
         final String fieldName;
@@ -154,6 +159,10 @@ public final class PooledObjectProcessor extends AbstractProcessor {
             mErrorReporter.abortWithError("One @PooledObjects class shall not extend another", type);
         }
 
+        if (pooleObj.threadCacheSize() < 0) {
+            mErrorReporter.abortWithError("@Pooled threadCacheSize must be >= 0", type);
+        }
+
         checkModifiersIfNested(type);
 
         // get the fully-qualified class name
@@ -229,7 +238,8 @@ public final class PooledObjectProcessor extends AbstractProcessor {
                 .addMethod(generateConstructorFromObject(className, processingEnv, properties, typeAdapters))
                 // overrides describeContents()
                 // static final Pooled
-                .addField(generatePooled(className, processingEnv, properties, classTypeName, typeAdapters));
+                .addField(generatePooled(className, processingEnv, properties, classTypeName, typeAdapters,
+                        type.getAnnotation(Pooled.class)));
                 // overrides writeToParcel()
 
 //        if (!ancestoIsParcelable(processingEnv, type)) {
@@ -462,7 +472,8 @@ public final class PooledObjectProcessor extends AbstractProcessor {
             String className, ProcessingEnvironment env,
             ImmutableList<Property> properties,
             TypeName type,
-            ImmutableMap<TypeMirror, FieldSpec> typeAdapters) {
+            ImmutableMap<TypeMirror, FieldSpec> typeAdapters,
+            Pooled pooled) {
         ClassName creator = ClassName.bestGuess("com.saharw.pooledobject.PooledObject");
         TypeName creatorOfClass = ParameterizedTypeName.get(creator, TypeVariableName.get(className.replaceFirst(POOLED_CLASS_PREFIX, "")));
         CodeBlock.Builder ctorCall = CodeBlock.builder();
@@ -495,18 +506,33 @@ public final class PooledObjectProcessor extends AbstractProcessor {
                 .addParameter(TypeVariableName.get(className.replaceFirst(POOLED_CLASS_PREFIX, "")), METHOD_PARAM_NAME);
         expireMethod.addCode(generateExpireCode(className, type));
 
-        TypeSpec pooledImpl = TypeSpec.anonymousClassBuilder("")
+        //Method reset(T target)
+        MethodSpec.Builder resetMethod = MethodSpec.methodBuilder(RESET_METHOD_NAME);
+        resetMethod
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addParameter(TypeVariableName.get(className.replaceFirst(POOLED_CLASS_PREFIX, "")), RESET_PARAM_NAME);
+        resetMethod.addCode(generateResetCode(className, properties));
+
+        TypeSpec.Builder pooledImpl = TypeSpec.anonymousClassBuilder("")
                 .superclass(creatorOfClass)
                 .addMethod(createMethod.returns(TypeVariableName.get(className.replaceFirst(POOLED_CLASS_PREFIX, "")))
                         .build())
                 .addMethod(validateMethod.returns(TypeName.BOOLEAN)
                         .build())
                 .addMethod(expireMethod.returns(TypeName.VOID).build())
-                .build();
+                .addMethod(resetMethod.build());
+
+        // pool configuration taken from @Pooled, only emitted when it differs from the default
+        CodeBlock config = generateConfigCode(pooled);
+        if (!config.isEmpty()) {
+            pooledImpl.addInitializerBlock(config);
+        }
 
         return FieldSpec
                 .builder(creator, POOLED_OBJECT_PREFIX, PUBLIC, FINAL, STATIC)
-                .initializer("$L", pooledImpl)
+                .initializer("$L", pooledImpl.build())
                 .build();
     }
 
@@ -535,6 +561,39 @@ public final class PooledObjectProcessor extends AbstractProcessor {
         return codeBlock.build();
     }
 
+    private CodeBlock generateResetCode(String className, ImmutableList<Property> properties) {
+        CodeBlock.Builder codeBlock = CodeBlock.builder();
+
+//        generates:
+//          <Orig_obj_type> o = getPrototype();
+//          if (o == null) return false;
+//          target.<field> = o.<field>; (for every instance field that can be assigned)
+//          return true;
+        String origType = className.replaceFirst(POOLED_CLASS_PREFIX, "");
+        codeBlock.addStatement(origType + " " + METHOD_PARAM_NAME + " = " + GET_PROTOTYPE_METHOD + "()");
+        codeBlock.beginControlFlow("if (" + METHOD_PARAM_NAME + " == null)");
+        codeBlock.addStatement("return false");
+        codeBlock.endControlFlow();
+        for (Property p : properties) {
+            Set<Modifier> modifiers = p.element.getModifiers();
+            if (modifiers.contains(STATIC) || modifiers.contains(FINAL)) {
+                continue;
+            }
+            codeBlock.addStatement("$N.$N = $N.$N", RESET_PARAM_NAME, p.fieldName, METHOD_PARAM_NAME, p.fieldName);
+        }
+        codeBlock.addStatement("return true");
+        return codeBlock.build();
+    }
+
+    private CodeBlock generateConfigCode(Pooled pooled) {
+        CodeBlock.Builder codeBlock = CodeBlock.builder();
+
+        if (pooled.threadCacheSize() > 0) {
+            codeBlock.addStatement(SET_THREAD_CACHE_SIZE_METHOD + "($L)", pooled.threadCacheSize());
+        }
+        return codeBlock.build();
+    }
+
     private CodeBlock generateExpireCode(String className, TypeName type) {
         CodeBlock.Builder codeBlock = CodeBlock.builder();
 
@@ -0,0 +1,164 @@
+package com.saharw.objectpool.codegen;
+
+import com.saharw.pooledobject.PoolClock;
+import com.saharw.pooledobject.Pooled;
+import com.saharw.pooledobject.PooledObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles a {@code @Pooled} class with the processor and checks the generated {@code reset}:
+ * its source, and that the generated pool renews an expired instance in place from the
+ * prototype.
+ */
+public class PooledObjectProcessorTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String AMP = "package sample;\n"
+            + "\n"
+            + "import com.saharw.pooledobject.Pooled;\n"
+            + "\n"
+            + "@Pooled\n"
+            + "public class Amp {\n"
+            + "    public static int sMade;\n"
+            + "    public String mBrand;\n"
+            + "    public int mWatts;\n"
+            + "    public boolean mOn;\n"
+            + "\n"
+            + "    public Amp() {\n"
+            + "    }\n"
+            + "\n"
+            + "    public Amp(Amp o) {\n"
+            + "        this.mBrand = o.mBrand;\n"
+            + "        this.mWatts = o.mWatts;\n"
+            + "        this.mOn = o.mOn;\n"
+            + "        sMade++;\n"
+            + "    }\n"
+            + "\n"
+            + "    public boolean isValid() {\n"
+            + "        return mOn;\n"
+            + "    }\n"
+            + "\n"
+            + "    public void expire() {\n"
+            + "        mOn = false;\n"
+            + "    }\n"
+            + "}\n";
+
+    private static String generated;
+    private static Class<?> ampClass;
+    private static PooledObject<Object> pool;
+
+    @BeforeClass
+    @SuppressWarnings("unchecked")
+    public static void compile() throws Exception {
+        File dir = Files.createTempDirectory("pooled-processor").toFile();
+        File sources = new File(dir, "src/sample");
+        File classes = new File(dir, "classes");
+        assertTrue(sources.mkdirs() && classes.mkdirs());
+        File amp = new File(sources, "Amp.java");
+        Files.write(amp.toPath(), AMP.getBytes(UTF_8));
+
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager files = javac.getStandardFileManager(diagnostics, null, UTF_8);
+        List<String> options = Arrays.asList(
+                "-classpath", location(Pooled.class) + File.pathSeparator + location(PooledObject.class),
+                "-d", classes.getPath(),
+                "-s", classes.getPath());
+        JavaCompiler.CompilationTask task = javac.getTask(null, files, diagnostics, options, null,
+                files.getJavaFileObjects(amp));
+        task.setProcessors(Collections.singletonList(new PooledObjectProcessor()));
+        assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        files.close();
+
+        generated = new String(Files.readAllBytes(new File(classes, "sample/Pooled_Amp.java").toPath()), UTF_8);
+        ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()},
+                PooledObjectProcessorTest.class.getClassLoader());
+        ampClass = loader.loadClass("sample.Amp");
+        Field field = loader.loadClass("sample.Pooled_Amp").getField("pool");
+        field.setAccessible(true);
+        pool = (PooledObject<Object>) field.get(null);
+    }
+
+    @Test
+    public void resetCopiesEveryInstanceField() {
+        assertTrue(generated, generated.contains("public boolean reset(Amp target)"));
+        assertTrue(generated, generated.contains("target.mBrand = o.mBrand;"));
+        assertTrue(generated, generated.contains("target.mWatts = o.mWatts;"));
+        assertTrue(generated, generated.contains("target.mOn = o.mOn;"));
+        assertFalse(generated, generated.contains("sMade = o.sMade"));
+    }
+
+    @Test
+    public void expiredInstanceIsRenewedFromThePrototype() throws Exception {
+        Object prototype = amp("Vox", 30, true);
+        assertFalse("reset without a prototype", pool.reset(amp(null, 0, false)));
+        pool.setPrototype(prototype);
+        PoolClock.Manual clock = new PoolClock.Manual();
+        pool.setClock(clock);
+        pool.setExpirationTime(10);
+
+        Object borrowed = pool.checkOut();
+        assertEquals("Vox", get(borrowed, "mBrand"));
+        set(borrowed, "mBrand", "Marshall");
+        set(borrowed, "mWatts", 100);
+        pool.checkIn(borrowed);
+        clock.advance(11);
+
+        Object renewed = pool.checkOut();
+        assertSame(borrowed, renewed);
+        assertEquals("Vox", get(renewed, "mBrand"));
+        assertEquals(30, get(renewed, "mWatts"));
+        assertEquals(true, get(renewed, "mOn"));
+        assertEquals("Vox", get(prototype, "mBrand"));
+        // created once, renewed without the copy constructor
+        assertEquals(1, ampClass.getField("sMade").get(null));
+        assertNotNull(pool.getPrototype());
+    }
+
+    private static Object amp(String brand, int watts, boolean on) throws Exception {
+        Object amp = ampClass.newInstance();
+        set(amp, "mBrand", brand);
+        set(amp, "mWatts", watts);
+        set(amp, "mOn", on);
+        return amp;
+    }
+
+    private static Object get(Object amp, String field) throws Exception {
+        return ampClass.getField(field).get(amp);
+    }
+
+    private static void set(Object amp, String field, Object value) throws Exception {
+        ampClass.getField(field).set(amp, value);
+    }
+
+    private static String location(Class<?> type) throws URISyntaxException, IOException {
+        return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+}